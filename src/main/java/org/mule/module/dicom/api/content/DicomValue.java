@@ -13,27 +13,165 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * A tag value of one of the DicomValueType types. Only the value itself is stored, a number in bits or a
+ * String, List or Map in ref, and the other representations are converted when their getter is called.
+ */
 public class DicomValue implements Serializable {
-    private static final long serialVersionUID = -4247869292949159940L;
+    private static final long serialVersionUID = 3315052317452279372L;
 
     private final DicomValueType type;
     public DicomValueType getType() { return type; }
-    private final String asString;
-    public String getAsString() { return asString; }
-    private final int asInteger;
-    public int getAsInteger() { return asInteger; }
-    private final double asDouble;
-    public double getAsDouble() { return asDouble; }
-    private final float asFloat;
-    public float getAsFloat() { return asFloat; }
-    private final short asShort;
-    public short getAsShort() { return asShort; }
-    private final long asLong;
-    public long getAsLong() { return asLong; }
-    private final List<DicomValue> asList;
-    public List<DicomValue> getAsList() { return asList; }
-    private final Map<String, DicomValue> asMap;
-    public Map<String, DicomValue> getAsMap() { return asMap; }
+    // INTEGER, SHORT and LONG as is, FLOAT and DOUBLE as their raw bits
+    private final long bits;
+    // STRING, LIST or MAP
+    private final Object ref;
+
+    private DicomValue(DicomValueType type, long bits, Object ref) {
+        this.type = type;
+        this.bits = bits;
+        this.ref = ref;
+    }
+
+    public DicomValue() {
+        this(DicomValueType.NULL, 0, null);
+    }
+
+    public DicomValue(Object value) {
+        DicomValueType valueType;
+        long valueBits = 0;
+        Object valueRef = null;
+        if (value instanceof String) {
+            valueType = DicomValueType.STRING;
+            valueRef = value;
+        } else if (value instanceof Integer) {
+            valueType = DicomValueType.INTEGER;
+            valueBits = (Integer) value;
+        } else if (value instanceof Double) {
+            valueType = DicomValueType.DOUBLE;
+            valueBits = Double.doubleToRawLongBits((Double) value);
+        } else if (value instanceof Float) {
+            valueType = DicomValueType.FLOAT;
+            valueBits = Float.floatToRawIntBits((Float) value);
+        } else if (value instanceof Short) {
+            valueType = DicomValueType.SHORT;
+            valueBits = (Short) value;
+        } else if (value instanceof Long) {
+            valueType = DicomValueType.LONG;
+            valueBits = (Long) value;
+        } else if (value instanceof List) {
+            valueType = DicomValueType.LIST;
+            List<DicomValue> list = new ArrayList<>(((List<?>) value).size());
+            for (Object item : (List<?>) value) {
+                list.add(new DicomValue(item));
+            }
+            valueRef = list;
+        } else if (value instanceof Map) {
+            valueType = DicomValueType.MAP;
+            Map<String, DicomValue> map = new HashMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (entry.getKey() instanceof String) {
+                    map.put((String) entry.getKey(), new DicomValue(entry.getValue()));
+                }
+            }
+            valueRef = map;
+        } else {
+            valueType = DicomValueType.NULL;
+        }
+        this.type = valueType;
+        this.bits = valueBits;
+        this.ref = valueRef;
+    }
+
+    public static DicomValue of(int value) { return new DicomValue(DicomValueType.INTEGER, value, null); }
+    public static DicomValue of(short value) { return new DicomValue(DicomValueType.SHORT, value, null); }
+    public static DicomValue of(long value) { return new DicomValue(DicomValueType.LONG, value, null); }
+    public static DicomValue of(float value) { return new DicomValue(DicomValueType.FLOAT, Float.floatToRawIntBits(value), null); }
+    public static DicomValue of(double value) { return new DicomValue(DicomValueType.DOUBLE, Double.doubleToRawLongBits(value), null); }
+
+    private float floatValue() { return Float.intBitsToFloat((int) bits); }
+    private double doubleValue() { return Double.longBitsToDouble(bits); }
+
+    public String getAsString() {
+        switch (type) {
+            case STRING:
+                return (String) ref;
+            case INTEGER:
+                return Integer.toString((int) bits);
+            case DOUBLE:
+                return Double.toString(doubleValue());
+            case FLOAT:
+                return Float.toString(floatValue());
+            case SHORT:
+                return Short.toString((short) bits);
+            case LONG:
+                return Long.toString(bits);
+            default:
+                return null;
+        }
+    }
+
+    public int getAsInteger() {
+        switch (type) {
+            case INTEGER:
+            case SHORT:
+                return (int) bits;
+            default:
+                return 0;
+        }
+    }
+
+    public double getAsDouble() {
+        switch (type) {
+            case INTEGER:
+            case SHORT:
+            case LONG:
+                return bits;
+            case DOUBLE:
+                return doubleValue();
+            case FLOAT:
+                return floatValue();
+            default:
+                return 0;
+        }
+    }
+
+    public float getAsFloat() {
+        switch (type) {
+            case INTEGER:
+            case SHORT:
+                return bits;
+            case FLOAT:
+                return floatValue();
+            default:
+                return 0;
+        }
+    }
+
+    public short getAsShort() {
+        return type == DicomValueType.SHORT ? (short) bits : 0;
+    }
+
+    public long getAsLong() {
+        switch (type) {
+            case INTEGER:
+            case SHORT:
+            case LONG:
+                return bits;
+            default:
+                return 0;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<DicomValue> getAsList() {
+        return type == DicomValueType.LIST ? (List<DicomValue>) ref : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public Map<String, DicomValue> getAsMap() {
+        return type == DicomValueType.MAP ? (Map<String, DicomValue>) ref : null;
+    }
 
     public boolean isEmpty() {
         boolean isEmpty;
@@ -42,10 +180,10 @@ public class DicomValue implements Serializable {
                 isEmpty = true;
                 break;
             case LIST:
-                isEmpty = asList.isEmpty();
+                isEmpty = getAsList().isEmpty();
                 break;
             case MAP:
-                isEmpty = asMap.isEmpty();
+                isEmpty = getAsMap().isEmpty();
                 break;
             default:
                 isEmpty = false;
@@ -54,152 +192,6 @@ public class DicomValue implements Serializable {
         return isEmpty;
     }
 
-    public DicomValue() {
-        type = DicomValueType.NULL;
-        asString = null;
-        asInteger = 0;
-        asDouble = 0;
-        asFloat = 0;
-        asShort = 0;
-        asLong = 0;
-        asMap = null;
-        asList = null;
-    }
-    public DicomValue(Object value) {
-        if (value == null) {
-            type = DicomValueType.NULL;
-            asString = null;
-            asInteger = 0;
-            asDouble = 0;
-            asFloat = 0;
-            asShort = 0;
-            asLong = 0;
-            asMap = null;
-            asList = null;
-        } else {
-            String simpleName = value.getClass().getSimpleName();
-            switch (simpleName) {
-                case "String":
-                    type = DicomValueType.STRING;
-                    asString = (String) value;
-                    // Cast to other types if possible
-                    asInteger = 0;
-                    asDouble = 0;
-                    asFloat = 0;
-                    asShort = 0;
-                    asLong = 0;
-                    asMap = null;
-                    asList = null;
-                    break;
-                case "Integer":
-                    type = DicomValueType.INTEGER;
-                    asInteger = (int) value;
-                    // Cast to other types if possible
-                    asString = Integer.toString(asInteger);
-                    asDouble = asInteger;
-                    asFloat = asInteger;
-                    asShort = 0;
-                    asLong = asInteger;
-                    asMap = null;
-                    asList = null;
-                    break;
-                case "Double":
-                    type = DicomValueType.DOUBLE;
-                    asDouble = (double) value;
-                    // Cast to other types if possible
-                    asString = Double.toString(asDouble);
-                    asInteger = 0;
-                    asFloat = 0;
-                    asShort = 0;
-                    asLong = 0;
-                    asMap = null;
-                    asList = null;
-                    break;
-                case "Float":
-                    type = DicomValueType.FLOAT;
-                    asFloat = (float) value;
-                    // Cast to other types if possible
-                    asString = Float.toString(asFloat);
-                    asInteger = 0;
-                    asDouble = asFloat;
-                    asShort = 0;
-                    asLong = 0;
-                    asMap = null;
-                    asList = null;
-                    break;
-                case "Short":
-                    type = DicomValueType.SHORT;
-                    asShort = (short) value;
-                    // Cast to other types if possible
-                    asString = Short.toString(asShort);
-                    asInteger = asShort;
-                    asDouble = asShort;
-                    asFloat = asShort;
-                    asLong = asShort;
-                    asMap = null;
-                    asList = null;
-                    break;
-                case "Long":
-                    type = DicomValueType.LONG;
-                    asLong = (long) value;
-                    // Cast to other types if possible
-                    asString = Long.toString(asLong);
-                    asInteger = 0;
-                    asDouble = asLong;
-                    asFloat = 0;
-                    asShort = 0;
-                    asMap = null;
-                    asList = null;
-                    break;
-                case "ArrayList":
-                    type = DicomValueType.LIST;
-                    asList = new ArrayList<>();
-                    List<?> list = (List<?>) value;
-                    for (Object item : list) {
-                        asList.add(new DicomValue(item));
-                    }
-                    // Cast to other types if possible
-                    asString = null;
-                    asInteger = 0;
-                    asDouble = 0;
-                    asFloat = 0;
-                    asShort = 0;
-                    asLong = 0;
-                    asMap = null;
-                    break;
-                case "HashMap":
-                    type = DicomValueType.MAP;
-                    asMap = new HashMap<>();
-                    Map<?, ?> map = (Map<?, ?>) value;
-                    for (Map.Entry<?, ?> entry : map.entrySet()) {
-                        if (entry.getKey() instanceof String) {
-                            asMap.put((String) entry.getKey(), new DicomValue(entry.getValue()));
-                        }
-                    }
-                    // Cast to other types if possible
-                    asString = null;
-                    asInteger = 0;
-                    asDouble = 0;
-                    asFloat = 0;
-                    asShort = 0;
-                    asLong = 0;
-                    asList = null;
-                    break;
-                default:
-                    type = DicomValueType.NULL;
-                    asString = null;
-                    asInteger = 0;
-                    asDouble = 0;
-                    asFloat = 0;
-                    asShort = 0;
-                    asLong = 0;
-                    asMap = null;
-                    asList = null;
-                    break;
-            }
-        }
-    }
-
     @Override
     public String toString() {
         String value;
@@ -208,13 +200,13 @@ public class DicomValue implements Serializable {
                 value = "NULL";
                 break;
             case MAP:
-                value = "{HashMap} size = " + asMap.size();
+                value = "{HashMap} size = " + getAsMap().size();
                 break;
             case LIST:
-                value = "{ArrayList} size = " + asList.size();
+                value = "{ArrayList} size = " + getAsList().size();
                 break;
             default:
-                value = asString;
+                value = getAsString();
                 break;
         }
         return value;
@@ -15,9 +15,12 @@ import java.util.Map;
 public class FindScuPayload extends ScuPayload {
     private final List<Map<String, DicomValue>> results;
     public List<Map<String, DicomValue>> getResults() { return results; }
+    private final boolean truncated;
+    public boolean getTruncated() { return truncated; }
 
     public FindScuPayload(FindScu findScu) {
         super(findScu.getMessageId(), findScu.getAttributes());
         this.results = findScu.getPayload();
+        this.truncated = findScu.getTruncated();
     }
 }
@@ -0,0 +1,25 @@
+/**
+ * Copyright (c) 2022 The Johns Hopkins University
+ * All rights reserved
+ *
+ * @author David J. Talley, Technology Innovation Center, Precision Medicine Analytics Platform, Johns Hopkins Medicine
+ *
+ */
+package org.mule.module.dicom.api.parameter;
+
+public enum ArchiveFormat {
+    TAR_GZIP("TarGzip"),
+    INDEXED_TAR_GZIP("IndexedTarGzip");
+
+    final String displayName;
+    public String getDisplayName() { return displayName; }
+
+    ArchiveFormat(String displayName) {
+        this.displayName = displayName;
+    }
+
+    @Override
+    public String toString() {
+        return displayName;
+    }
+}
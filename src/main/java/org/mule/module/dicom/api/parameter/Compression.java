@@ -0,0 +1,56 @@
+/**
+ * Copyright (c) 2022 The Johns Hopkins University
+ * All rights reserved
+ *
+ * @author David J. Talley, Technology Innovation Center, Precision Medicine Analytics Platform, Johns Hopkins Medicine
+ *
+ */
+package org.mule.module.dicom.api.parameter;
+
+import org.mule.runtime.extension.api.annotation.Ignore;
+import org.mule.runtime.extension.api.annotation.param.Optional;
+import org.mule.runtime.extension.api.annotation.param.Parameter;
+import org.mule.runtime.extension.api.annotation.param.display.DisplayName;
+import org.mule.runtime.extension.api.annotation.param.display.Placement;
+import org.mule.runtime.extension.api.annotation.param.display.Summary;
+
+public class Compression {
+    @Ignore
+    public static final String PARAMETER_GROUP = "Compression";
+
+    @Parameter
+    @DisplayName("Compression Level")
+    @Summary("Gzip level, from 1 (fastest) to 9 (smallest). Defaults to 6")
+    @Optional(defaultValue = "6")
+    @Placement(order = 1, tab = "Compression")
+    private int compressionLevel;
+    public int getCompressionLevel() { return compressionLevel; }
+    public void setCompressionLevel(int compressionLevel) { this.compressionLevel = compressionLevel; }
+
+    @Parameter
+    @DisplayName("Compression Threads")
+    @Summary("Threads compressing blocks of the tar/gzip in parallel. Defaults to 0 (one per processor)")
+    @Optional(defaultValue = "0")
+    @Placement(order = 2, tab = "Compression")
+    private int compressionThreads;
+    public int getCompressionThreads() { return compressionThreads; }
+    public void setCompressionThreads(int compressionThreads) { this.compressionThreads = compressionThreads; }
+
+    @Parameter
+    @DisplayName("Archive Buffer Size")
+    @Summary("Megabytes of an instance kept in memory and written straight into the tar/gzip. Larger instances are spooled to the output folder first. 0 spools every instance. Defaults to 64")
+    @Optional(defaultValue = "64")
+    @Placement(order = 3, tab = "Compression")
+    private int archiveBufferSize;
+    public int getArchiveBufferSize() { return archiveBufferSize; }
+    public void setArchiveBufferSize(int archiveBufferSize) { this.archiveBufferSize = archiveBufferSize; }
+
+    @Parameter
+    @DisplayName("Archive Format")
+    @Summary("TarGzip is a single gzip stream. IndexedTarGzip compresses each instance separately and writes an index (.idx) next to the archive, so one instance can be read without decompressing the others")
+    @Optional(defaultValue = "TAR_GZIP")
+    @Placement(order = 4, tab = "Compression")
+    private ArchiveFormat archiveFormat;
+    public ArchiveFormat getArchiveFormat() { return archiveFormat; }
+    public void setArchiveFormat(ArchiveFormat archiveFormat) { this.archiveFormat = archiveFormat; }
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright (c) 2022 The Johns Hopkins University
+ * All rights reserved
+ *
+ * @author David J. Talley, Technology Innovation Center, Precision Medicine Analytics Platform, Johns Hopkins Medicine
+ *
+ */
+package org.mule.module.dicom.api.parameter;
+
+import org.mule.runtime.extension.api.annotation.Ignore;
+import org.mule.runtime.extension.api.annotation.param.Optional;
+import org.mule.runtime.extension.api.annotation.param.Parameter;
+import org.mule.runtime.extension.api.annotation.param.display.DisplayName;
+import org.mule.runtime.extension.api.annotation.param.display.Placement;
+import org.mule.runtime.extension.api.annotation.param.display.Summary;
+
+public class QueryCache {
+    @Ignore
+    public static final String PARAMETER_GROUP = "Query Cache";
+
+    @Parameter
+    @DisplayName("Max Entries")
+    @Summary("Find SCU results kept, least recently used are removed first. Default is 0 (no cache)")
+    @Optional(defaultValue = "0")
+    @Placement(order = 1, tab = "Query Cache")
+    private int maxEntries;
+    public int getMaxEntries() { return maxEntries; }
+    public void setMaxEntries(int maxEntries) { this.maxEntries = maxEntries; }
+    @Parameter
+    @DisplayName("Patient Level TTL")
+    @Summary("Milliseconds PATIENT level results are kept. Default is 300000")
+    @Optional(defaultValue = "300000")
+    @Placement(order = 2, tab = "Query Cache")
+    private int patientTtl;
+    public int getPatientTtl() { return patientTtl; }
+    public void setPatientTtl(int patientTtl) { this.patientTtl = patientTtl; }
+    @Parameter
+    @DisplayName("Study Level TTL")
+    @Summary("Milliseconds STUDY level results are kept. Default is 60000")
+    @Optional(defaultValue = "60000")
+    @Placement(order = 3, tab = "Query Cache")
+    private int studyTtl;
+    public int getStudyTtl() { return studyTtl; }
+    public void setStudyTtl(int studyTtl) { this.studyTtl = studyTtl; }
+    @Parameter
+    @DisplayName("Series Level TTL")
+    @Summary("Milliseconds SERIES level results are kept. Default is 30000")
+    @Optional(defaultValue = "30000")
+    @Placement(order = 4, tab = "Query Cache")
+    private int seriesTtl;
+    public int getSeriesTtl() { return seriesTtl; }
+    public void setSeriesTtl(int seriesTtl) { this.seriesTtl = seriesTtl; }
+    @Parameter
+    @DisplayName("Image Level TTL")
+    @Summary("Milliseconds IMAGE and FRAME level results are kept. Default is 10000")
+    @Optional(defaultValue = "10000")
+    @Placement(order = 5, tab = "Query Cache")
+    private int imageTtl;
+    public int getImageTtl() { return imageTtl; }
+    public void setImageTtl(int imageTtl) { this.imageTtl = imageTtl; }
+    @Parameter
+    @DisplayName("Not Found TTL")
+    @Summary("Milliseconds queries with no results are kept, at any level. Default is 5000")
+    @Optional(defaultValue = "5000")
+    @Placement(order = 6, tab = "Query Cache")
+    private int notFoundTtl;
+    public int getNotFoundTtl() { return notFoundTtl; }
+    public void setNotFoundTtl(int notFoundTtl) { this.notFoundTtl = notFoundTtl; }
+}
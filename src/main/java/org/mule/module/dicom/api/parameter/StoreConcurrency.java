@@ -0,0 +1,37 @@
+/**
+ * Copyright (c) 2022 The Johns Hopkins University
+ * All rights reserved
+ *
+ * @author David J. Talley, Technology Innovation Center, Precision Medicine Analytics Platform, Johns Hopkins Medicine
+ *
+ */
+package org.mule.module.dicom.api.parameter;
+
+import org.mule.runtime.extension.api.annotation.Ignore;
+import org.mule.runtime.extension.api.annotation.param.Optional;
+import org.mule.runtime.extension.api.annotation.param.Parameter;
+import org.mule.runtime.extension.api.annotation.param.display.DisplayName;
+import org.mule.runtime.extension.api.annotation.param.display.Placement;
+import org.mule.runtime.extension.api.annotation.param.display.Summary;
+
+public class StoreConcurrency {
+    @Ignore
+    public static final String PARAMETER_GROUP = "Concurrency";
+
+    @Parameter
+    @DisplayName("Outstanding Requests")
+    @Summary("C-STORE requests sent without waiting for their responses. Defaults to 1 (wait for each response). Also limited by the Max Operations Invoked negotiated with the remote server")
+    @Optional(defaultValue = "1")
+    @Placement(order = 1, tab = "Concurrency")
+    private int outstandingRequests;
+    public int getOutstandingRequests() { return outstandingRequests; }
+    public void setOutstandingRequests(int outstandingRequests) { this.outstandingRequests = outstandingRequests; }
+    @Parameter
+    @DisplayName("Associations")
+    @Summary("Parallel associations used to send a Folder or List of Files. Defaults to 1")
+    @Optional(defaultValue = "1")
+    @Placement(order = 2, tab = "Concurrency")
+    private int associations;
+    public int getAssociations() { return associations; }
+    public void setAssociations(int associations) { this.associations = associations; }
+}
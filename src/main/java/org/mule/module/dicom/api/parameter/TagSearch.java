@@ -38,4 +38,12 @@ public class TagSearch {
     private List<String> responseTags;
     public List<String> getResponseTags() { return responseTags; }
     public void setResponseTags(List<String> responseTags) { this.responseTags = responseTags; }
+
+    @Parameter
+    @DisplayName("Max Results")
+    @Summary("Keeps this many results, and stops the query with C-CANCEL when there are more, flagging the results as truncated (0 is unlimited)")
+    @Optional(defaultValue = "0")
+    private int maxResults;
+    public int getMaxResults() { return maxResults; }
+    public void setMaxResults(int maxResults) { this.maxResults = maxResults; }
 }
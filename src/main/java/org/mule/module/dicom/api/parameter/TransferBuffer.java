@@ -0,0 +1,47 @@
+/**
+ * Copyright (c) 2022 The Johns Hopkins University
+ * All rights reserved
+ *
+ * @author David J. Talley, Technology Innovation Center, Precision Medicine Analytics Platform, Johns Hopkins Medicine
+ *
+ */
+package org.mule.module.dicom.api.parameter;
+
+import org.mule.runtime.extension.api.annotation.Ignore;
+import org.mule.runtime.extension.api.annotation.param.Optional;
+import org.mule.runtime.extension.api.annotation.param.Parameter;
+import org.mule.runtime.extension.api.annotation.param.display.DisplayName;
+import org.mule.runtime.extension.api.annotation.param.display.Placement;
+import org.mule.runtime.extension.api.annotation.param.display.Summary;
+
+public class TransferBuffer {
+    @Ignore
+    public static final String PARAMETER_GROUP = "Transfer Buffer";
+
+    @Parameter
+    @DisplayName("Queue Size")
+    @Summary("Received files held in memory while waiting for a target association")
+    @Optional(defaultValue = "100")
+    @Placement(order = 1, tab = "Buffer")
+    private int queueSize;
+    public int getQueueSize() { return queueSize; }
+    public void setQueueSize(int queueSize) { this.queueSize = queueSize; }
+
+    @Parameter
+    @DisplayName("Max Buffer Size")
+    @Summary("Megabytes of received files held in memory while waiting for a target association (0 is unlimited)")
+    @Optional(defaultValue = "512")
+    @Placement(order = 2, tab = "Buffer")
+    private int maxBufferSize;
+    public int getMaxBufferSize() { return maxBufferSize; }
+    public void setMaxBufferSize(int maxBufferSize) { this.maxBufferSize = maxBufferSize; }
+
+    @Parameter
+    @DisplayName("Spool Folder")
+    @Summary("Folder where received files are written when the buffer is full. When not set, the C-GET waits instead")
+    @Optional
+    @Placement(order = 3, tab = "Buffer")
+    private String spoolFolder;
+    public String getSpoolFolder() { return spoolFolder; }
+    public void setSpoolFolder(String spoolFolder) { this.spoolFolder = spoolFolder; }
+}
@@ -14,6 +14,10 @@ import org.mule.module.dicom.api.parameter.TransferSyntax;
 import org.dcm4che3.data.UID;
 
 import java.lang.reflect.Field;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
 
 public class ScuOperationConfig {
     private final ScuType operation;
@@ -43,6 +47,10 @@ public class ScuOperationConfig {
     public int getCancelAfter() { return cancelAfter; }
     public void setCancelAfter(int cancelAfter) { this.cancelAfter = cancelAfter; }
 
+    private int maxResults = 0;
+    public int getMaxResults() { return maxResults; }
+    public void setMaxResults(int maxResults) { this.maxResults = maxResults; }
+
     private String transferSyntaxUid = null;
     public String getTransferSyntaxUid() { return transferSyntaxUid; }
     public void setTransferSyntaxUid(String transferSyntaxUid) { this.transferSyntaxUid = transferSyntaxUid; }
@@ -51,10 +59,42 @@ public class ScuOperationConfig {
     public String getSopClassUid() { return sopClassUid; }
     public void setSopClassUid(String sopClassUid) { this.sopClassUid = sopClassUid; }
 
+    private final Map<String, Set<String>> presentationContexts = new LinkedHashMap<>();
+    public Map<String, Set<String>> getPresentationContexts() { return presentationContexts; }
+
+    /**
+     * Adds a SOP Class / Transfer Syntax pair to be negotiated when a C-STORE association is opened
+     * @return true if the pair was not already known
+     */
+    public boolean addPresentationContext(String cuid, String tsuid) {
+        if (cuid == null || tsuid == null) return false;
+        return presentationContexts.computeIfAbsent(cuid, k -> new LinkedHashSet<>()).add(tsuid);
+    }
+
     public ScuOperationConfig(ScuType operation) {
         this.operation = operation;
     }
 
+    /**
+     * Copies the configuration so it can be used by another connection at the same time
+     */
+    public ScuOperationConfig copy() {
+        ScuOperationConfig config = new ScuOperationConfig(operation);
+        config.informationModel = informationModel;
+        config.retrieveLevel = retrieveLevel;
+        config.transferSyntax = transferSyntax;
+        config.sopClasses = sopClasses;
+        config.storeTimeout = storeTimeout;
+        config.cancelAfter = cancelAfter;
+        config.maxResults = maxResults;
+        config.transferSyntaxUid = transferSyntaxUid;
+        config.sopClassUid = sopClassUid;
+        for (Map.Entry<String, Set<String>> entry : presentationContexts.entrySet()) {
+            config.presentationContexts.put(entry.getKey(), new LinkedHashSet<>(entry.getValue()));
+        }
+        return config;
+    }
+
     public String getOperationName() {
         return operation.getName();
     }
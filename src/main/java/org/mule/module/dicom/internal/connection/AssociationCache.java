@@ -0,0 +1,138 @@
+/**
+ * Copyright (c) 2022 The Johns Hopkins University
+ * All rights reserved
+ *
+ * @author David J. Talley, Technology Innovation Center, Precision Medicine Analytics Platform, Johns Hopkins Medicine
+ *
+ */
+package org.mule.module.dicom.internal.connection;
+
+import org.dcm4che3.net.Association;
+import org.dcm4che3.net.AssociationListener;
+import org.dcm4che3.net.Device;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps idle associations open so later operations with the same presentation contexts can skip
+ * negotiation and the TLS handshake. Associations are released once they have been idle for the
+ * configured time, and dropped as soon as they are closed or aborted by the remote side.
+ */
+public class AssociationCache implements AssociationListener {
+    private static final Logger log = LoggerFactory.getLogger(AssociationCache.class);
+    private final Device device;
+    private final int idleTime;
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    private static class Entry {
+        private final Association as;
+        private final long idleSince;
+        private final ScheduledFuture<?> eviction;
+        private Entry(Association as, long idleSince, ScheduledFuture<?> eviction) {
+            this.as = as;
+            this.idleSince = idleSince;
+            this.eviction = eviction;
+        }
+    }
+
+    /**
+     * @param idleTime milliseconds an association is kept open without being used
+     */
+    public AssociationCache(Device device, int idleTime) {
+        this.device = device;
+        this.idleTime = idleTime;
+    }
+
+    /**
+     * Removes the association cached for the key
+     * @return the association, or null if there is none ready for data transfer
+     */
+    public synchronized Association take(String key) {
+        Entry entry = entries.remove(key);
+        if (entry == null) return null;
+        entry.eviction.cancel(false);
+        if (!entry.as.isReadyForDataTransfer()) return null;
+        if (log.isTraceEnabled()) log.trace("Reusing association {} idle for {}ms", entry.as, System.currentTimeMillis() - entry.idleSince);
+        return entry.as;
+    }
+
+    /**
+     * Milliseconds the association for the key has been idle, or -1 if none is cached
+     */
+    public synchronized long getIdleTime(String key) {
+        Entry entry = entries.get(key);
+        return entry == null ? -1 : System.currentTimeMillis() - entry.idleSince;
+    }
+
+    /**
+     * Keeps the association open for later operations with the same key
+     */
+    public void put(String key, Association as) {
+        Association replaced = null;
+        synchronized (this) {
+            ScheduledFuture<?> eviction = device.schedule(() -> evict(key, as), idleTime, TimeUnit.MILLISECONDS);
+            Entry previous = entries.put(key, new Entry(as, System.currentTimeMillis(), eviction));
+            if (previous != null && previous.as != as) {
+                previous.eviction.cancel(false);
+                replaced = previous.as;
+            }
+        }
+        if (replaced != null) release(replaced);
+    }
+
+    private void evict(String key, Association as) {
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry == null || entry.as != as) return;
+            entries.remove(key);
+        }
+        if (log.isTraceEnabled()) log.trace("Releasing idle association {}", as);
+        release(as);
+    }
+
+    /**
+     * Releases every cached association
+     */
+    public void clear() {
+        List<Association> idle = new ArrayList<>();
+        synchronized (this) {
+            for (Entry entry : entries.values()) {
+                entry.eviction.cancel(false);
+                idle.add(entry.as);
+            }
+            entries.clear();
+        }
+        for (Association as : idle) {
+            release(as);
+        }
+    }
+
+    @Override
+    public synchronized void onClose(Association as) {
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.as == as) {
+                if (log.isTraceEnabled()) log.trace("Dropping closed association {}", as);
+                entry.eviction.cancel(false);
+                it.remove();
+            }
+        }
+    }
+
+    private static void release(Association as) {
+        try {
+            if (as.isReadyForDataTransfer()) as.release();
+        } catch (Exception e) {
+            log.trace("Ignored exception {}", e.toString());
+        }
+    }
+}
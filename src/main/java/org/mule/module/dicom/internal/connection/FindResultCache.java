@@ -0,0 +1,84 @@
+/**
+ * Copyright (c) 2022 The Johns Hopkins University
+ * All rights reserved
+ *
+ * @author David J. Talley, Technology Innovation Center, Precision Medicine Analytics Platform, Johns Hopkins Medicine
+ *
+ */
+package org.mule.module.dicom.internal.connection;
+
+import org.dcm4che3.data.Attributes;
+import org.mule.module.dicom.api.parameter.QueryCache;
+import org.mule.module.dicom.api.parameter.RetrieveLevel;
+import org.mule.module.dicom.internal.config.ScuOperationConfig;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used cache of C-FIND results, shared by every connection of a configuration.
+ * Each level has its own time to live, and queries without results are kept for a shorter time.
+ */
+public class FindResultCache<V> {
+    private final QueryCache settings;
+    private final Map<String, Entry<V>> entries;
+
+    private static class Entry<V> {
+        private final V value;
+        private final long expires;
+        private Entry(V value, long expires) {
+            this.value = value;
+            this.expires = expires;
+        }
+    }
+
+    public FindResultCache(QueryCache settings) {
+        this.settings = settings;
+        final int maxEntries = settings.getMaxEntries();
+        this.entries = new LinkedHashMap<String, Entry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry<V>> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Builds the key of a query: remote AE, information model, level, and the search keys in tag order
+     */
+    public static String getKey(String calledAet, ScuOperationConfig scuOperationConfig, Attributes keys) {
+        return calledAet + '|' + scuOperationConfig.getInformationModelCuid() + '|' + scuOperationConfig.getRetrieveLevelDefault() +
+                '|' + scuOperationConfig.getMaxResults() + '|' + keys.toString(Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    public synchronized V get(String key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) return null;
+        if (entry.expires < System.currentTimeMillis()) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.value;
+    }
+
+    public synchronized void put(String key, V value, String level, boolean empty) {
+        int ttl = empty ? settings.getNotFoundTtl() : getTtl(level);
+        if (ttl <= 0) return;
+        entries.put(key, new Entry<>(value, System.currentTimeMillis() + ttl));
+    }
+
+    private int getTtl(String level) {
+        if (level == null) return settings.getStudyTtl();
+        switch (RetrieveLevel.valueOf(level)) {
+            case PATIENT:
+                return settings.getPatientTtl();
+            case SERIES:
+                return settings.getSeriesTtl();
+            case IMAGE:
+            case FRAME:
+                return settings.getImageTtl();
+            default:
+                return settings.getStudyTtl();
+        }
+    }
+}
@@ -8,7 +8,7 @@
 package org.mule.module.dicom.internal.connection;
 
 import org.mule.module.dicom.internal.util.AttribUtils;
-import org.mule.module.dicom.api.content.DicomValue;
+import org.mule.module.dicom.internal.util.ColumnarResults;
 import org.dcm4che3.data.Attributes;
 import org.dcm4che3.data.Tag;
 import org.dcm4che3.net.Association;
@@ -17,8 +17,8 @@ import org.dcm4che3.net.Status;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.lang.reflect.Field;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -27,6 +27,12 @@ public class MuleDimseRSPHandler extends DimseRSPHandler {
     private int status = -1;
     public int getStatus() { return status; }
 
+    private int maxResults = 0;
+    public void setMaxResults(int maxResults) { this.maxResults = maxResults; }
+    private int resultCount = 0;
+    private boolean truncated = false;
+    public boolean isTruncated() { return truncated; }
+
     public MuleDimseRSPHandler(int msgId) {
         super(msgId);
     }
@@ -34,8 +40,8 @@ public class MuleDimseRSPHandler extends DimseRSPHandler {
     private final Map<String, Object> command = new HashMap<>();
     public Map<String, Object> getCommand() { return command; }
 
-    private final DicomValue data = new DicomValue(new ArrayList<DicomValue>());
-    public DicomValue getData() { return data; }
+    private final ColumnarResults results = new ColumnarResults();
+    public ColumnarResults getResults() { return results; }
 
     @Override
     public void onDimseRSP(Association as, Attributes cmd, Attributes data) {
@@ -49,13 +55,34 @@ public class MuleDimseRSPHandler extends DimseRSPHandler {
                 AttribUtils.upsertMap(cmdMap, command);
             }
             if (data != null && !data.isEmpty()) {
-                Map<String, Object> objectMap = AttribUtils.attributesToMap(data);
-                this.data.getAsList().add(new DicomValue(objectMap));
+                if (maxResults > 0 && resultCount >= maxResults) {
+                    // A match past the cap: stop the remote server from sending the rest
+                    truncated = true;
+                    try {
+                        cancel(as);
+                    } catch (IOException e) {
+                        log.debug("Unable to cancel after {} results: {}", resultCount, e.getMessage());
+                    }
+                } else {
+                    resultCount++;
+                    onData(data);
+                }
             }
         }
     }
 
+    /**
+     * Receives the data set of each response. The default keeps them all in memory, by column.
+     */
+    protected void onData(Attributes data) {
+        results.add(data);
+    }
+
     public String getStatusText() {
+        return getStatusText(status);
+    }
+
+    public static String getStatusText(int status) {
         if (status < 0) return "NotSet";
         String value = "Unknown";
         for (Field f : Status.class.getFields()) {
@@ -0,0 +1,123 @@
+/**
+ * Copyright (c) 2022 The Johns Hopkins University
+ * All rights reserved
+ *
+ * @author David J. Talley, Technology Innovation Center, Precision Medicine Analytics Platform, Johns Hopkins Medicine
+ *
+ */
+package org.mule.module.dicom.internal.connection;
+
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.net.Association;
+import org.dcm4che3.net.Status;
+import org.mule.module.dicom.internal.util.DicomJsonWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes each C-FIND response as DICOM JSON into a bounded buffer of encoded results, without building
+ * maps of the results. When the buffer is full the association reader waits, which holds back the remote
+ * server until the consumer catches up.
+ */
+public class MuleJsonRSPHandler extends MuleDimseRSPHandler {
+    private static final Logger log = LoggerFactory.getLogger(MuleJsonRSPHandler.class);
+    private static final long OFFER_INTERVAL = 100;
+    private static final byte[] END = new byte[0];
+    private final BlockingQueue<byte[]> buffer;
+    private final ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+    private final DicomJsonWriter writer;
+    private volatile boolean closed = false;
+    private volatile boolean complete = false;
+
+    public MuleJsonRSPHandler(int msgId, int bufferSize, boolean lineDelimited) {
+        super(msgId);
+        buffer = new ArrayBlockingQueue<>(Math.max(bufferSize, 1));
+        writer = new DicomJsonWriter(encoded, lineDelimited);
+    }
+
+    /**
+     * True once the final response has been received or the association has closed
+     */
+    public boolean isComplete() { return complete; }
+
+    @Override
+    protected synchronized void onData(Attributes data) {
+        try {
+            writer.writeResult(data);
+        } catch (IOException e) {
+            log.error(e.getMessage(), e);
+        }
+        put(drain());
+    }
+
+    @Override
+    public void onDimseRSP(Association as, Attributes cmd, Attributes data) {
+        super.onDimseRSP(as, cmd, data);
+        if (!Status.isPending(getStatus())) finish();
+    }
+
+    @Override
+    public void onClose(Association as) {
+        super.onClose(as);
+        finish();
+    }
+
+    private synchronized void finish() {
+        if (complete) return;
+        complete = true;
+        try {
+            writer.finish();
+        } catch (IOException e) {
+            log.error(e.getMessage(), e);
+        }
+        byte[] tail = drain();
+        if (tail.length > 0) put(tail);
+        put(END);
+    }
+
+    private byte[] drain() {
+        byte[] bytes = encoded.toByteArray();
+        encoded.reset();
+        return bytes;
+    }
+
+    private void put(byte[] result) {
+        try {
+            while (!closed && !buffer.offer(result, OFFER_INTERVAL, TimeUnit.MILLISECONDS)) {
+                // Wait for the consumer
+            }
+        } catch (InterruptedException e) {
+            Thread t = Thread.currentThread();
+            t.getUncaughtExceptionHandler().uncaughtException(t, e);
+            t.interrupt();
+        }
+    }
+
+    /**
+     * Waits for the next encoded result
+     * @return null when there are no more results
+     */
+    public byte[] next() throws InterruptedException {
+        byte[] result = buffer.take();
+        if (result == END) {
+            // Leave the end marker for any later call
+            buffer.offer(END);
+            return null;
+        }
+        return result;
+    }
+
+    /**
+     * Stops buffering results, releasing the association reader if it is waiting
+     */
+    public void close() {
+        closed = true;
+        buffer.clear();
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * Copyright (c) 2022 The Johns Hopkins University
+ * All rights reserved
+ *
+ * @author David J. Talley, Technology Innovation Center, Precision Medicine Analytics Platform, Johns Hopkins Medicine
+ *
+ */
+package org.mule.module.dicom.internal.connection;
+
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.net.Association;
+import org.dcm4che3.net.DimseRSPHandler;
+import org.dcm4che3.net.Status;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Collects the responses of C-STORE requests sent without waiting, while keeping at most
+ * window requests outstanding on the association.
+ */
+public class MuleStoreRSPCollector {
+    private static final Logger log = LoggerFactory.getLogger(MuleStoreRSPCollector.class);
+    public static final int NO_RESPONSE = -1;
+    private final int window;
+    private final Semaphore permits;
+    private final List<String> iuidList;
+    private final Map<String, Integer> statuses;
+    private final AtomicInteger maxOutstanding = new AtomicInteger(0);
+
+    /**
+     * @param window maximum number of outstanding requests
+     * @param iuidList receives the SOP Instance UID of every instance the remote server responded to
+     * @param statuses receives the final status of every instance, NO_RESPONSE if the association closed first
+     */
+    public MuleStoreRSPCollector(int window, List<String> iuidList, Map<String, Integer> statuses) {
+        this.window = Math.max(window, 1);
+        this.permits = new Semaphore(this.window);
+        this.iuidList = iuidList;
+        this.statuses = statuses;
+    }
+
+    public int getWindow() { return window; }
+
+    /**
+     * Requests sent and not answered yet
+     */
+    public int getOutstanding() { return window - permits.availablePermits(); }
+
+    /**
+     * The most requests that were outstanding at the same time
+     */
+    public int getMaxOutstanding() { return maxOutstanding.get(); }
+
+    /**
+     * Waits for room in the window
+     * @param timeout milliseconds, 0 waits indefinitely
+     * @return false if the timeout elapsed
+     */
+    public boolean acquire(int timeout) throws InterruptedException {
+        if (timeout <= 0) {
+            permits.acquire();
+        } else if (!permits.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+            return false;
+        }
+        maxOutstanding.accumulateAndGet(getOutstanding(), Math::max);
+        return true;
+    }
+
+    /**
+     * Waits until every outstanding request has been answered
+     * @param timeout milliseconds, 0 waits indefinitely
+     * @return false if the timeout elapsed
+     */
+    public boolean drain(int timeout) throws InterruptedException {
+        if (timeout <= 0) {
+            permits.acquire(window);
+        } else if (!permits.tryAcquire(window, timeout, TimeUnit.MILLISECONDS)) {
+            return false;
+        }
+        permits.release(window);
+        return true;
+    }
+
+    /**
+     * Records an instance that could not be sent, giving its place in the window back
+     */
+    public void failed(String iuid) {
+        complete(iuid, NO_RESPONSE);
+    }
+
+    /**
+     * Creates the handler for one request. Every handler reports to this collector.
+     */
+    public DimseRSPHandler handler(int msgId, String iuid) {
+        return new DimseRSPHandler(msgId) {
+            private final AtomicBoolean done = new AtomicBoolean(false);
+
+            @Override
+            public void onDimseRSP(Association as, Attributes cmd, Attributes data) {
+                super.onDimseRSP(as, cmd, data);
+                int status = cmd.getInt(Tag.Status, NO_RESPONSE);
+                if (Status.isPending(status)) return;
+                if (done.compareAndSet(false, true)) complete(iuid, status);
+            }
+
+            @Override
+            public void onClose(Association as) {
+                super.onClose(as);
+                if (done.compareAndSet(false, true)) complete(iuid, NO_RESPONSE);
+            }
+        };
+    }
+
+    private void complete(String iuid, int status) {
+        if (log.isTraceEnabled()) log.trace("C-STORE {} completed with status {}", iuid, MuleDimseRSPHandler.getStatusText(status));
+        statuses.put(iuid, status);
+        if (status != NO_RESPONSE) {
+            synchronized (iuidList) {
+                iuidList.add(iuid);
+            }
+        }
+        permits.release();
+    }
+}
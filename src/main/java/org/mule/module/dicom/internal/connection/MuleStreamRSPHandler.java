@@ -0,0 +1,105 @@
+/**
+ * Copyright (c) 2022 The Johns Hopkins University
+ * All rights reserved
+ *
+ * @author David J. Talley, Technology Innovation Center, Precision Medicine Analytics Platform, Johns Hopkins Medicine
+ *
+ */
+package org.mule.module.dicom.internal.connection;
+
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.net.Association;
+import org.dcm4che3.net.Status;
+import org.mule.module.dicom.api.content.DicomValue;
+import org.mule.module.dicom.internal.util.AttribUtils;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hands each C-FIND response to a consumer through a bounded buffer instead of keeping them all in memory.
+ * When the buffer is full the association reader waits, which stops reading from the socket and holds
+ * back the remote server until the consumer catches up.
+ */
+public class MuleStreamRSPHandler extends MuleDimseRSPHandler {
+    private static final long OFFER_INTERVAL = 100;
+    private static final Map<String, DicomValue> END = Collections.unmodifiableMap(new HashMap<>());
+    private final BlockingQueue<Map<String, DicomValue>> buffer;
+    private volatile boolean closed = false;
+    private volatile boolean complete = false;
+
+    public MuleStreamRSPHandler(int msgId, int bufferSize) {
+        super(msgId);
+        buffer = new ArrayBlockingQueue<>(Math.max(bufferSize, 1));
+    }
+
+    /**
+     * True once the final response has been received or the association has closed
+     */
+    public boolean isComplete() { return complete; }
+
+    @Override
+    protected void onData(Attributes data) {
+        put(new DicomValue(AttribUtils.attributesToMap(data)).getAsMap());
+    }
+
+    @Override
+    public void onDimseRSP(Association as, Attributes cmd, Attributes data) {
+        super.onDimseRSP(as, cmd, data);
+        if (!Status.isPending(getStatus())) finish();
+    }
+
+    @Override
+    public void onClose(Association as) {
+        super.onClose(as);
+        finish();
+    }
+
+    private void finish() {
+        if (complete) return;
+        complete = true;
+        put(END);
+    }
+
+    private void put(Map<String, DicomValue> result) {
+        try {
+            while (!closed && !buffer.offer(result, OFFER_INTERVAL, TimeUnit.MILLISECONDS)) {
+                // Wait for the consumer
+            }
+        } catch (InterruptedException e) {
+            Thread t = Thread.currentThread();
+            t.getUncaughtExceptionHandler().uncaughtException(t, e);
+            t.interrupt();
+        }
+    }
+
+    /**
+     * Moves up to max results into the page, waiting for the first one
+     * @return false when there are no more results
+     */
+    public boolean next(List<Map<String, DicomValue>> page, int max) throws InterruptedException {
+        Map<String, DicomValue> result = buffer.take();
+        while (result != END) {
+            page.add(result);
+            if (page.size() >= max) return true;
+            result = buffer.poll();
+            if (result == null) return true;
+        }
+        // Leave the end marker for any later call
+        buffer.offer(END);
+        return !page.isEmpty();
+    }
+
+    /**
+     * Stops buffering results, releasing the association reader if it is waiting
+     */
+    public void close() {
+        closed = true;
+        buffer.clear();
+    }
+}
@@ -13,6 +13,7 @@ import org.mule.module.dicom.api.parameter.Security;
 import org.mule.module.dicom.api.parameter.SopClass;
 import org.mule.module.dicom.internal.config.ScuType;
 import org.mule.module.dicom.internal.exception.DicomError;
+import org.mule.module.dicom.internal.operation.FindScu;
 import org.mule.module.dicom.internal.store.MuleNullStore;
 import org.mule.module.dicom.internal.store.MuleStore;
 import org.mule.module.dicom.internal.util.SecurityUtils;
@@ -20,6 +21,7 @@ import org.mule.module.dicom.internal.util.SopUtils;
 import org.mule.module.dicom.internal.store.MuleCStoreSCP;
 import org.mule.module.dicom.internal.config.ScuOperationConfig;
 import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Tag;
 import org.dcm4che3.data.UID;
 import org.dcm4che3.net.*;
 import org.dcm4che3.net.pdu.AAssociateRQ;
@@ -38,6 +40,8 @@ import java.security.UnrecoverableKeyException;
 import java.security.cert.CertificateException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
@@ -45,6 +49,7 @@ import java.util.concurrent.TimeUnit;
 
 public final class ScuConnection {
     private static final Logger log = LoggerFactory.getLogger(ScuConnection.class);
+    private static final long VALIDATE_AFTER = 1000;
     private final Device device;
     private final Connection connection;
     public Connection getConnection() { return connection; }
@@ -56,6 +61,27 @@ public final class ScuConnection {
     private ScheduledFuture<?> scheduledCancel;
     private ScuOperationConfig scuOperationConfig;
     private boolean localExecutor = false;
+    private final AetConnection aetConnection;
+    private final Security security;
+    private final TlsContextFactory tlsContextFactory;
+    private final ScheduledExecutorService scheduledExecutorService;
+    private AssociationCache associationCache = null;
+    private String associationKey = null;
+    private int associationIdleTime = 0;
+    private FindResultCache<FindScu> findResultCache = null;
+    public FindResultCache<FindScu> getFindResultCache() { return findResultCache; }
+    public void setFindResultCache(FindResultCache<FindScu> findResultCache) { this.findResultCache = findResultCache; }
+    public int getAssociationIdleTime() { return associationIdleTime; }
+
+    /**
+     * Milliseconds a released association is kept open for reuse by a later operation with the same
+     * presentation contexts. 0 releases associations immediately.
+     */
+    public void setAssociationIdleTime(int associationIdleTime) {
+        if (associationCache != null) associationCache.clear();
+        this.associationIdleTime = associationIdleTime;
+        this.associationCache = associationIdleTime > 0 ? new AssociationCache(device, associationIdleTime) : null;
+    }
 
     public ScuConnection(String localAetName, AetConnection aetConnection, Security security, TlsContextFactory tlsContextFactory) {
         this(localAetName, aetConnection, security, tlsContextFactory, Executors.newSingleThreadScheduledExecutor());
@@ -65,6 +91,10 @@ public final class ScuConnection {
     public ScuConnection(String localAetName, AetConnection aetConnection, Security security, TlsContextFactory tlsContextFactory, ScheduledExecutorService scheduledExecutorService) {
         as = null;
         scheduledCancel = null;
+        this.aetConnection = aetConnection;
+        this.security = security;
+        this.tlsContextFactory = tlsContextFactory;
+        this.scheduledExecutorService = scheduledExecutorService;
 
         connection = new Connection();
         connection.setReceivePDULength(16378);
@@ -120,7 +150,37 @@ public final class ScuConnection {
         }
     }
 
+    /**
+     * Creates another connection to the same remote Application Entity with the same settings, so work can be
+     * spread over several associations. The caller must disconnect it.
+     */
+    public ScuConnection fork() {
+        // A local executor is single threaded and cannot serve a second association
+        ScuConnection fork = localExecutor
+                ? new ScuConnection(ae.getAETitle(), aetConnection, security, tlsContextFactory)
+                : new ScuConnection(ae.getAETitle(), aetConnection, security, tlsContextFactory, scheduledExecutorService);
+        Connection conn = fork.getConnection();
+        conn.setMaxOpsInvoked(connection.getMaxOpsInvoked());
+        conn.setMaxOpsPerformed(connection.getMaxOpsPerformed());
+        conn.setReceivePDULength(connection.getReceivePDULength());
+        conn.setSendPDULength(connection.getSendPDULength());
+        conn.setSendBufferSize(connection.getSendBufferSize());
+        conn.setReceiveBufferSize(connection.getReceiveBufferSize());
+        conn.setConnectTimeout(connection.getConnectTimeout());
+        conn.setRequestTimeout(connection.getRequestTimeout());
+        conn.setAcceptTimeout(connection.getAcceptTimeout());
+        conn.setReleaseTimeout(connection.getReleaseTimeout());
+        conn.setSendTimeout(connection.getSendTimeout());
+        conn.setResponseTimeout(connection.getResponseTimeout());
+        conn.setIdleTimeout(connection.getIdleTimeout());
+        conn.setSocketCloseDelay(connection.getSocketCloseDelay());
+        fork.setAssociationIdleTime(associationIdleTime);
+        fork.setFindResultCache(findResultCache);
+        return fork;
+    }
+
     public void disconnect() {
+        if (associationCache != null) associationCache.clear();
         if (localExecutor) {
             ScheduledExecutorService scheduledExecutor = device.getScheduledExecutor();
             if (scheduledExecutor != null) {
@@ -157,18 +217,22 @@ public final class ScuConnection {
             rq.removePresentationContext(pc);
             log.trace("Removed Presentation Syntax {}", pc.getPCID());
         }
-        // Set the new presentation contexts
+        // Set the new presentation contexts. Verification always takes PCID 1, before the 128 limit is reached,
+        // so an idle association can be checked with C-ECHO before it is reused
+        rq.addPresentationContext(new PresentationContext(1, UID.Verification, UID.ImplicitVRLittleEndian));
         if (scuOperationConfig.getOperation() == ScuType.STORE) {
-            int pcid = 1;
-            String cuid = scuOperationConfig.getInformationModelCuid();
-            String tsuid = scuOperationConfig.getTransferSyntaxCodes()[0];
-            rq.addPresentationContext(new PresentationContext(pcid++, UID.Verification, tsuid));
-            rq.addPresentationContext(new PresentationContext(pcid++, cuid, scuOperationConfig.getTransferSyntaxCodes()));
-            if (!tsuid.equals(UID.ExplicitVRLittleEndian)) rq.addPresentationContext(new PresentationContext(pcid++, cuid, UID.ExplicitVRLittleEndian));
-            if (!tsuid.equals(UID.ImplicitVRLittleEndian)) rq.addPresentationContext(new PresentationContext(pcid, cuid, UID.ImplicitVRLittleEndian));
+            // The instance being sent goes first, followed by every other pair known for the batch
+            addStoreContext(scuOperationConfig.getInformationModelCuid(), scuOperationConfig.getTransferSyntaxCodes()[0]);
+            for (Map.Entry<String, Set<String>> entry : scuOperationConfig.getPresentationContexts().entrySet()) {
+                for (String tsuid : entry.getValue()) {
+                    addStoreContext(entry.getKey(), tsuid);
+                }
+            }
         } else {
-            PresentationContext pc = new PresentationContext(1, scuOperationConfig.getInformationModelCuid(), scuOperationConfig.getTransferSyntaxCodes());
-            rq.addPresentationContext(pc);
+            String cuid = scuOperationConfig.getInformationModelCuid();
+            if (!UID.Verification.equals(cuid)) {
+                rq.addPresentationContext(new PresentationContext(3, cuid, scuOperationConfig.getTransferSyntaxCodes()));
+            }
             SopClass[] sopClasses = scuOperationConfig.getSopClasses();
             if (sopClasses == null || sopClasses.length == 0) {
                 log.debug("Using Default SOP Classes");
@@ -185,9 +249,25 @@ public final class ScuConnection {
         if (store == null) cStoreSCP.setStore(new MuleNullStore());
         else cStoreSCP.setStore(store);
 
+        // Reuse an idle association negotiated with the same presentation contexts
+        if (associationCache != null) {
+            associationKey = getAssociationKey();
+            long idle = associationCache.getIdleTime(associationKey);
+            Association cached = associationCache.take(associationKey);
+            if (cached != null) {
+                if (idle < VALIDATE_AFTER || isAlive(cached)) {
+                    if (log.isTraceEnabled()) log.trace("Reusing association {}", cached);
+                    this.as = cached;
+                    return;
+                }
+                cached.abort();
+            }
+        }
+
         // Create a new association and start it
         try {
             this.as = this.ae.connect(this.connection, this.remote, this.rq);
+            if (associationCache != null) this.as.addAssociationListener(associationCache);
         } catch (InterruptedException e) {
             Thread t = Thread.currentThread();
             t.getUncaughtExceptionHandler().uncaughtException(t, e);
@@ -197,6 +277,73 @@ public final class ScuConnection {
         }
     }
 
+    private String getAssociationKey() {
+        StringBuilder key = new StringBuilder(ae.getAETitle()).append('>').append(rq.getCalledAET());
+        for (PresentationContext pc : rq.getPresentationContexts()) {
+            key.append('|').append(pc.getPCID()).append(':').append(pc.getAbstractSyntax());
+            for (String ts : pc.getTransferSyntaxes()) {
+                key.append(',').append(ts);
+            }
+        }
+        for (RoleSelection rs : rq.getRoleSelections()) {
+            key.append('|').append(rs.getSOPClassUID()).append(rs.isSCU() ? ":SCU" : "").append(rs.isSCP() ? ":SCP" : "");
+        }
+        return key.toString();
+    }
+
+    /**
+     * Checks an idle association with C-ECHO
+     */
+    private boolean isAlive(Association association) {
+        try {
+            DimseRSP rsp = association.cecho();
+            rsp.next();
+            return rsp.getCommand().getInt(Tag.Status, -1) == Status.Success;
+        } catch (InterruptedException e) {
+            Thread t = Thread.currentThread();
+            t.getUncaughtExceptionHandler().uncaughtException(t, e);
+            t.interrupt();
+        } catch (Exception e) {
+            log.debug("Idle association {} failed C-ECHO: {}", association, e.getMessage());
+        }
+        return false;
+    }
+
+    private void addStoreContext(String cuid, String tsuid) {
+        if (isRequested(cuid, tsuid)) return;
+        int numpc = rq.getNumberOfPresentationContexts();
+        if (numpc >= 128) {
+            log.debug("Presentation Context has the maximum 128 SOP Classes. Deferring {} {}", cuid, tsuid);
+            return;
+        }
+        rq.addPresentationContext(new PresentationContext(2 * numpc + 1, cuid, tsuid));
+    }
+
+    /**
+     * True if the SOP Class / Transfer Syntax pair was proposed for the current association
+     */
+    public boolean isRequested(String cuid, String tsuid) {
+        for (PresentationContext pc : rq.getPresentationContexts()) {
+            if (pc.getAbstractSyntax().equals(cuid)) {
+                for (String ts : pc.getTransferSyntaxes()) {
+                    if (ts.equals(tsuid)) return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * True if the current association accepted the SOP Class / Transfer Syntax pair
+     */
+    public boolean isAccepted(String cuid, String tsuid) {
+        return isReadyForDataTransfer() && as.getTransferSyntaxesFor(cuid).contains(tsuid);
+    }
+
+    public boolean isReadyForDataTransfer() {
+        return as != null && as.isReadyForDataTransfer();
+    }
+
     public void stop() {
         if (scuOperationConfig == null) return;
         if (log.isTraceEnabled()) log.trace("Stopping C-{}: {} >> {}@{}:{}", scuOperationConfig.getOperation(), ae.getAETitle(), rq.getCalledAET(), remote.getHostname(), remote.getPort());
@@ -210,7 +357,11 @@ public final class ScuConnection {
                 } else if (this.scheduledCancel == null) {
                     this.as.waitForOutstandingRSP();
                 }
-                this.as.release();
+                if (associationCache != null && associationKey != null && this.as.isReadyForDataTransfer()) {
+                    associationCache.put(associationKey, this.as);
+                } else {
+                    this.as.release();
+                }
             } catch (InterruptedException e) {
                 Thread t = Thread.currentThread();
                 t.getUncaughtExceptionHandler().uncaughtException(t, e);
@@ -226,6 +377,7 @@ public final class ScuConnection {
         if (this.as == null) return null;
         final Association association = this.as;
         final MuleDimseRSPHandler rspHandler = new MuleDimseRSPHandler(association.nextMessageID());
+        rspHandler.setMaxResults(scuOperationConfig.getMaxResults());
         String cuid = scuOperationConfig.getInformationModelCuid();
         try {
             switch (scuOperationConfig.getOperation()) {
@@ -240,25 +392,13 @@ public final class ScuConnection {
                     association.cget(cuid, 0, data, null, rspHandler);
                     break;
                 case STORE:
-                    String tsuid = scuOperationConfig.getTransferSyntaxCodes()[0];
-                    association.cstore(cuid, iuid, 0, new DataWriterAdapter(data), tsuid, rspHandler);
+                    invoke(association, data, iuid, rspHandler);
                     break;
                 case ECHO:
                     association.cecho(cuid);
                     break;
             }
-            int cancelAfter = scuOperationConfig.getCancelAfter();
-            if (cancelAfter > 0) {
-                this.scheduledCancel = device.schedule(() -> {
-                    try {
-                        if (log.isWarnEnabled()) log.warn("Canceling C-{}: {} >> {}@{}:{}", scuOperationConfig.getOperation(), ae.getAETitle(), rq.getCalledAET(), remote.getHostname(), remote.getPort());
-                        rspHandler.cancel(association);
-                    } catch (IOException e) {
-                        log.error(e.getMessage(), e);
-                    }
-
-                }, cancelAfter, TimeUnit.MILLISECONDS);
-            }
+            scheduleCancel(association, rspHandler);
             if (association.isReadyForDataTransfer()) {
                 association.waitForOutstandingRSP();
             }
@@ -273,6 +413,109 @@ public final class ScuConnection {
         return null;
     }
 
+    private void scheduleCancel(Association association, DimseRSPHandler rspHandler) {
+        int cancelAfter = scuOperationConfig.getCancelAfter();
+        if (this.scheduledCancel != null) {
+            // The association may be reused, so an earlier request must not cancel this one
+            this.scheduledCancel.cancel(false);
+            this.scheduledCancel = null;
+        }
+        if (cancelAfter > 0) {
+            this.scheduledCancel = device.schedule(() -> {
+                try {
+                    if (log.isWarnEnabled()) log.warn("Canceling C-{}: {} >> {}@{}:{}", scuOperationConfig.getOperation(), ae.getAETitle(), rq.getCalledAET(), remote.getHostname(), remote.getPort());
+                    rspHandler.cancel(association);
+                } catch (IOException e) {
+                    log.error(e.getMessage(), e);
+                }
+
+            }, cancelAfter, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Sends a C-STORE or C-FIND request without waiting for its responses, which are delivered to the handler
+     */
+    public void invoke(Attributes data, String iuid, DimseRSPHandler rspHandler) throws IOException, InterruptedException {
+        if (this.as == null) throw new IOException("Association is not open");
+        invoke(this.as, data, iuid, rspHandler);
+        if (scuOperationConfig.getOperation() == ScuType.FIND) scheduleCancel(this.as, rspHandler);
+    }
+
+    /**
+     * Sends a C-STORE request whose data set is written as is, without waiting for its response
+     */
+    public void invoke(DataWriter dataWriter, String iuid, DimseRSPHandler rspHandler) throws IOException, InterruptedException {
+        if (this.as == null) throw new IOException("Association is not open");
+        invoke(this.as, dataWriter, iuid, rspHandler);
+    }
+
+    private void invoke(Association association, Attributes data, String iuid, DimseRSPHandler rspHandler) throws IOException, InterruptedException {
+        if (scuOperationConfig.getOperation() == ScuType.FIND) {
+            association.cfind(scuOperationConfig.getInformationModelCuid(), 0, data, null, rspHandler);
+        } else {
+            invoke(association, new DataWriterAdapter(data), iuid, rspHandler);
+        }
+    }
+
+    private void invoke(Association association, DataWriter dataWriter, String iuid, DimseRSPHandler rspHandler) throws IOException, InterruptedException {
+        String cuid = scuOperationConfig.getInformationModelCuid();
+        String tsuid = scuOperationConfig.getTransferSyntaxCodes()[0];
+        association.cstore(cuid, iuid, 0, dataWriter, tsuid, rspHandler);
+    }
+
+    /**
+     * Sends a C-STORE request whose data set is written as is, in the Transfer Syntax of the configuration,
+     * and waits for its response
+     */
+    public MuleDimseRSPHandler execute(DataWriter dataWriter, String iuid) throws IOException {
+        if (this.as == null) return null;
+        final Association association = this.as;
+        final MuleDimseRSPHandler rspHandler = new MuleDimseRSPHandler(association.nextMessageID());
+        try {
+            invoke(association, dataWriter, iuid, rspHandler);
+            scheduleCancel(association, rspHandler);
+            if (association.isReadyForDataTransfer()) {
+                association.waitForOutstandingRSP();
+            }
+            return rspHandler;
+        } catch (InterruptedException e) {
+            Thread t = Thread.currentThread();
+            t.getUncaughtExceptionHandler().uncaughtException(t, e);
+            t.interrupt();
+        }
+        return null;
+    }
+
+    /**
+     * Sends C-CANCEL for a request sent with invoke
+     */
+    public void cancel(DimseRSPHandler rspHandler) throws IOException {
+        if (this.as != null && this.as.isReadyForDataTransfer()) rspHandler.cancel(this.as);
+    }
+
+    public int nextMessageId() {
+        return this.as == null ? 0 : this.as.nextMessageID();
+    }
+
+    /**
+     * The asynchronous operations window negotiated with the remote server, 0 is unlimited
+     */
+    public int getMaxOpsInvoked() {
+        return this.as == null ? 1 : this.as.getMaxOpsInvoked();
+    }
+
+    public void abort() {
+        if (this.as != null) {
+            this.as.abort();
+            this.as = null;
+        }
+    }
+
+    public String getCalledAet() {
+        return rq.getCalledAET();
+    }
+
     @Override
     public String toString() {
         return String.format("%s->%s", rq.getCallingAET(), rq.getCalledAET());
@@ -11,10 +11,12 @@ import org.dcm4che3.net.Connection;
 import org.mule.module.dicom.api.parameter.AetConnection;
 import org.mule.module.dicom.api.parameter.ConnectionBuffer;
 import org.mule.module.dicom.api.parameter.ConnectionTimings;
+import org.mule.module.dicom.api.parameter.QueryCache;
 import org.mule.module.dicom.api.parameter.Security;
 import org.mule.module.dicom.internal.exception.DicomError;
-import org.mule.runtime.api.connection.ConnectionProvider;
+import org.mule.module.dicom.internal.operation.FindScu;
 import org.mule.runtime.api.connection.ConnectionValidationResult;
+import org.mule.runtime.api.connection.PoolingConnectionProvider;
 import org.mule.runtime.api.lifecycle.Initialisable;
 import org.mule.runtime.api.lifecycle.InitialisationException;
 import org.mule.runtime.api.scheduler.Scheduler;
@@ -33,8 +35,12 @@ import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 
+/**
+ * Each ScuConnection holds the state of its own association, so connections are pooled and every
+ * concurrent operation borrows its own. Size the pool with the pooling profile.
+ */
 @Alias("scu-connection")
-public class ScuConnectionProvider implements ConnectionProvider<ScuConnection> {
+public class ScuConnectionProvider implements PoolingConnectionProvider<ScuConnection> {
     private static final Logger log = LoggerFactory.getLogger(ScuConnectionProvider.class);
 
     @Parameter
@@ -49,6 +55,14 @@ public class ScuConnectionProvider implements ConnectionProvider<ScuConnection>
     private ConnectionBuffer connectionBuffer;
     @ParameterGroup(name = ConnectionTimings.PARAMETER_GROUP, showInDsl = true)
     private ConnectionTimings connectionTimings;
+    @ParameterGroup(name = QueryCache.PARAMETER_GROUP, showInDsl = true)
+    private QueryCache queryCache;
+    @Parameter
+    @DisplayName("Association Idle Time")
+    @Summary("Milliseconds to keep an association open for reuse by later operations. Default is 0 (release immediately)")
+    @Optional(defaultValue = "0")
+    @Placement(order = 9, tab = "Timings")
+    private int associationIdleTime;
     @Parameter
     @DisplayName("TLS Configuration")
     @Optional
@@ -56,6 +70,13 @@ public class ScuConnectionProvider implements ConnectionProvider<ScuConnection>
     private TlsContextFactory tlsContextFactory;
     @Inject
     private SchedulerService schedulerService;
+    private FindResultCache<FindScu> findResultCache = null;
+
+    private synchronized FindResultCache<FindScu> getFindResultCache() {
+        // Shared by every pooled connection
+        if (findResultCache == null && queryCache.getMaxEntries() > 0) findResultCache = new FindResultCache<>(queryCache);
+        return findResultCache;
+    }
 
     @Override
     public ScuConnection connect() {
@@ -86,6 +107,8 @@ public class ScuConnectionProvider implements ConnectionProvider<ScuConnection>
         conn.setResponseTimeout(connectionTimings.getResponseTimeout());
         conn.setIdleTimeout(connectionTimings.getIdleTimeout());
         conn.setSocketCloseDelay(connectionTimings.getSocketCloseDelay());
+        scuConnection.setAssociationIdleTime(associationIdleTime);
+        scuConnection.setFindResultCache(getFindResultCache());
         return scuConnection;
     }
 
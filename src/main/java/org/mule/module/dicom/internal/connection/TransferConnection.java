@@ -14,6 +14,10 @@ import org.mule.module.dicom.api.parameter.ConnectionTimings;
 import org.mule.module.dicom.api.parameter.Security;
 import org.mule.runtime.api.tls.TlsContextFactory;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+
 public final class TransferConnection {
     private final ScuConnection sourceConnection;
     public ScuConnection getSourceConnection() { return sourceConnection; }
@@ -25,8 +29,23 @@ public final class TransferConnection {
     private final ConnectionBuffer targetBuffer;
     private final ConnectionTimings targetTimings;
 
-    public ScuConnection getTargetConnection() {
-        ScuConnection targetConnection = new ScuConnection(localAetName, aetConnection, security, tlsContextFactory);
+    private final int targetAssociationIdleTime;
+    private final ScheduledExecutorService scheduledExecutorService;
+    private final List<ScuConnection> targetConnections = new ArrayList<>();
+
+    /**
+     * Long-lived connections to the target, created as needed and kept until this connection is disconnected.
+     * Each must only be used by one thread at a time.
+     */
+    public synchronized List<ScuConnection> getTargetConnections(int count) {
+        while (targetConnections.size() < count) {
+            targetConnections.add(createTargetConnection());
+        }
+        return new ArrayList<>(targetConnections.subList(0, count));
+    }
+
+    private ScuConnection createTargetConnection() {
+        ScuConnection targetConnection = new ScuConnection(localAetName, aetConnection, security, tlsContextFactory, scheduledExecutorService);
         Connection targetConn = targetConnection.getConnection();
         // Set Buffers
         targetConn.setMaxOpsInvoked(targetBuffer.getMaxOpsInvoked());
@@ -44,11 +63,13 @@ public final class TransferConnection {
         targetConn.setResponseTimeout(targetTimings.getResponseTimeout());
         targetConn.setIdleTimeout(targetTimings.getIdleTimeout());
         targetConn.setSocketCloseDelay(targetTimings.getSocketCloseDelay());
+        targetConnection.setAssociationIdleTime(targetAssociationIdleTime);
         return targetConnection;
     }
 
     public TransferConnection(ScuConnection sourceConnection, String localAetName, AetConnection aetConnection, Security security,
-                              TlsContextFactory tlsContextFactory, ConnectionBuffer targetBuffer, ConnectionTimings targetTimings) {
+                              TlsContextFactory tlsContextFactory, ConnectionBuffer targetBuffer, ConnectionTimings targetTimings,
+                              int targetAssociationIdleTime, ScheduledExecutorService scheduledExecutorService) {
         this.sourceConnection = sourceConnection;
         this.localAetName = localAetName;
         this.aetConnection = aetConnection;
@@ -56,9 +77,15 @@ public final class TransferConnection {
         this.tlsContextFactory = tlsContextFactory;
         this.targetBuffer = targetBuffer;
         this.targetTimings = targetTimings;
+        this.targetAssociationIdleTime = targetAssociationIdleTime;
+        this.scheduledExecutorService = scheduledExecutorService;
     }
 
-    public void disconnect() {
+    public synchronized void disconnect() {
         sourceConnection.disconnect();
+        for (ScuConnection targetConnection : targetConnections) {
+            targetConnection.disconnect();
+        }
+        targetConnections.clear();
     }
 }
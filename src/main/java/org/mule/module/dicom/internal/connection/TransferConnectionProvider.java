@@ -13,8 +13,8 @@ import org.mule.module.dicom.api.parameter.ConnectionBuffer;
 import org.mule.module.dicom.api.parameter.ConnectionTimings;
 import org.mule.module.dicom.api.parameter.Security;
 import org.mule.module.dicom.internal.exception.DicomError;
-import org.mule.runtime.api.connection.CachedConnectionProvider;
 import org.mule.runtime.api.connection.ConnectionValidationResult;
+import org.mule.runtime.api.connection.PoolingConnectionProvider;
 import org.mule.runtime.api.lifecycle.Initialisable;
 import org.mule.runtime.api.lifecycle.InitialisationException;
 import org.mule.runtime.api.scheduler.Scheduler;
@@ -34,8 +34,12 @@ import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 
+/**
+ * Each TransferConnection holds the state of its own source association, so connections are pooled and every
+ * concurrent transfer borrows its own. Size the pool with the pooling profile.
+ */
 @Alias("transfer-connection")
-public class TransferConnectionProvider implements CachedConnectionProvider<TransferConnection> {
+public class TransferConnectionProvider implements PoolingConnectionProvider<TransferConnection> {
     private static final Logger log = LoggerFactory.getLogger(TransferConnectionProvider.class);
     @Ignore
     private static final String SOURCE_PARAMETER_GROUP = "Source Server";
@@ -77,6 +81,20 @@ public class TransferConnectionProvider implements CachedConnectionProvider<Tran
     @ParameterGroup(name = TARGET_PARAMETER_GROUP + " " + ConnectionTimings.PARAMETER_GROUP, showInDsl = true)
     private ConnectionTimings targetTimings;
 
+    @Parameter
+    @DisplayName("Source Association Idle Time")
+    @Summary("Milliseconds to keep the source association open for reuse by later transfers. Default is 0 (release immediately)")
+    @Optional(defaultValue = "0")
+    @Placement(order = 9, tab = "Timings")
+    private int sourceAssociationIdleTime;
+
+    @Parameter
+    @DisplayName("Target Association Idle Time")
+    @Summary("Milliseconds to keep target associations open for reuse by later transfers. Default is 0 (release at the end of each transfer)")
+    @Optional(defaultValue = "0")
+    @Placement(order = 10, tab = "Timings")
+    private int targetAssociationIdleTime;
+
     @Parameter
     @DisplayName("TLS Configuration")
     @Optional
@@ -131,8 +149,10 @@ public class TransferConnectionProvider implements CachedConnectionProvider<Tran
         sourceConn.setResponseTimeout(sourceTimings.getResponseTimeout());
         sourceConn.setIdleTimeout(sourceTimings.getIdleTimeout());
         sourceConn.setSocketCloseDelay(sourceTimings.getSocketCloseDelay());
+        sourceConnection.setAssociationIdleTime(sourceAssociationIdleTime);
 
-        return new TransferConnection(sourceConnection, localAetName, targetAetConnection, targetSecurity, targetTlsContext, targetBuffer, targetTimings);
+        return new TransferConnection(sourceConnection, localAetName, targetAetConnection, targetSecurity, targetTlsContext, targetBuffer, targetTimings,
+                targetAssociationIdleTime, scheduler);
     }
 
     @Override
@@ -20,6 +20,7 @@ public class FileErrorsProvider implements ErrorTypeProvider {
         HashSet<ErrorTypeDefinition> errors = new HashSet<>();
         errors.add(DicomError.FILE_IO);
         errors.add(DicomError.INVALID_DICOM_OBJECT);
+        errors.add(DicomError.NOT_FOUND);
         return errors;
     }
 }
@@ -12,14 +12,19 @@ import org.mule.module.dicom.api.content.DicomObject;
 import org.mule.module.dicom.internal.config.DicomObjectInputResolver;
 import org.mule.module.dicom.api.content.DicomValue;
 import org.mule.module.dicom.internal.config.DicomObjectOutputResolver;
+import org.mule.module.dicom.internal.store.ArchiveIndex;
 import org.mule.module.dicom.internal.store.DicomFileType;
+import org.mule.module.dicom.internal.store.IngestFile;
 import org.mule.module.dicom.internal.util.AttribUtils;
+import org.mule.module.dicom.internal.util.ColumnarResults;
+import org.mule.module.dicom.internal.util.DicomJsonWriter;
 import org.mule.module.dicom.internal.util.StoreUtils;
 import org.mule.module.dicom.internal.exception.DicomError;
 import org.mule.module.dicom.internal.exception.FileErrorsProvider;
 import org.dcm4che3.data.Attributes;
 import org.dcm4che3.data.Tag;
 import org.dcm4che3.io.DicomInputStream;
+import org.dcm4che3.util.TagUtils;
 import org.mule.runtime.api.meta.ExpressionSupport;
 import org.mule.runtime.api.metadata.DataType;
 import org.mule.runtime.api.metadata.TypedValue;
@@ -40,12 +45,15 @@ import org.mule.runtime.extension.api.exception.ModuleException;
 import javax.inject.Inject;
 import javax.inject.Named;
 import java.io.*;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeSet;
 import java.util.UUID;
 
 import static org.mule.runtime.api.meta.ExpressionSupport.REQUIRED;
@@ -106,12 +114,53 @@ public class FileOperations {
         DicomObject dicom = (DicomObject)dicomObject;
         Attributes image = dicom.getContent();
         boolean allTags = (tagNames == null) || tagNames.isEmpty();
-        Map<String, Object> map = allTags ? AttribUtils.attributesToMap(image) : AttribUtils.extractTags(image, tagNames);
-        Map<String, DicomValue> payload = new HashMap<>();
-        for (Map.Entry<String, Object> entry : map.entrySet()) {
-            payload.put(entry.getKey(), new DicomValue(entry.getValue()));
+        ColumnarResults results = new ColumnarResults();
+        if (allTags) results.add(image);
+        else results.add(image, tagNames);
+        return results.get(0);
+    }
+
+    @MediaType(value = "application/json", strict = false)
+    @DisplayName("Extract Tags JSON")
+    @Summary("Extract tags from a DICOM InputStream (serialized org.dcm4che3.data.Attributes object) as DICOM JSON")
+    @Throws(FileErrorsProvider.class)
+    public InputStream
+    extractTagsJson(@DisplayName("DICOM Object")
+                    @Optional(defaultValue="#[payload]") @Expression(REQUIRED) @TypeResolver(DicomObjectInputResolver.class)
+                    Object dicomObject,
+                    @DisplayName("Tag Names")
+                    @Summary("Leave blank to extract all tags. Otherwise provide a list of tag identities (name, hex value, hex pair, or integer).")
+                    @Optional @Content
+                    @Example("#[\"PatientID\"]")
+                    List<String> tagNames
+    ) {
+        if (!(dicomObject instanceof DicomObject)) throw new ModuleException(DicomError.INVALID_DICOM_OBJECT, new RuntimeException(dicomObject.getClass().toString()));
+        DicomObject dicom = (DicomObject)dicomObject;
+        Attributes image = dicom.getContent();
+        boolean allTags = (tagNames == null) || tagNames.isEmpty();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try {
+            new DicomJsonWriter(output, false).writeObject(image, allTags ? image.tags() : selectTags(tagNames));
+        } catch (IOException e) {
+            throw new ModuleException(DicomError.FILE_IO, e);
         }
-        return payload;
+        return new ByteArrayInputStream(output.toByteArray());
+    }
+
+    /**
+     * Sorted tags of the tag identities, with the private creator of each private tag
+     */
+    private static int[] selectTags(List<String> tagNames) {
+        TreeSet<Integer> tags = new TreeSet<>();
+        for (String tagName : tagNames) {
+            int tag = AttribUtils.stringToTag(tagName);
+            tags.add(tag);
+            if (TagUtils.isPrivateTag(tag) && !TagUtils.isPrivateCreator(tag)) tags.add(TagUtils.creatorTagOf(tag));
+        }
+        int[] selected = new int[tags.size()];
+        int i = 0;
+        for (int tag : tags) selected[i++] = tag;
+        return selected;
     }
 
     @DisplayName("Read from File System")
@@ -123,18 +172,92 @@ public class FileOperations {
              @Path(type = FILE)
              String filename
     ) {
-        DicomFileType dft = DicomFileType.parse(filename);
-        if (!(dft.equals(DicomFileType.DICOM) || dft.equals(DicomFileType.DICOMDIR))) {
-            throw new ModuleException(DicomError.FILE_IO, new Exception("File is not DICOM"));
+        try (IngestFile file = IngestFile.open(filename)) {
+            DicomFileType dft = file.getType();
+            if (!(dft.equals(DicomFileType.DICOM) || dft.equals(DicomFileType.DICOMDIR))) {
+                throw new ModuleException(DicomError.FILE_IO, new Exception("File is not DICOM"));
+            }
+            return readDicomObject(file);
         }
-        File file = new File(filename);
-        try (DicomInputStream dis = new DicomInputStream(file)) {
+    }
+
+    private static DicomObject readDicomObject(IngestFile file) {
+        try (DicomInputStream dis = file.newDicomInputStream()) {
             dis.setIncludeBulkData(DicomInputStream.IncludeBulkData.URI);
-            Attributes fmi = dis.getFileMetaInformation();
-            Attributes content = dis.readDataset();
+            return readDicomObject(dis);
+        } catch (IOException e) {
+            throw new ModuleException(DicomError.FILE_IO, e);
+        }
+    }
+
+    private static DicomObject readDicomObject(DicomInputStream dis) throws IOException {
+        Attributes fmi = dis.getFileMetaInformation();
+        Attributes content = dis.readDataset();
+
+        return new DicomObject(content, fmi.getString(Tag.TransferSyntaxUID), fmi.getString(Tag.SourceApplicationEntityTitle, null),
+                fmi.getString(Tag.ImplementationClassUID, Implementation.getClassUID()), fmi.getString(Tag.ImplementationVersionName, Implementation.getVersionName()));
+    }
 
-            return new DicomObject(content, fmi.getString(Tag.TransferSyntaxUID), fmi.getString(Tag.SourceApplicationEntityTitle, null),
-                    fmi.getString(Tag.ImplementationClassUID, Implementation.getClassUID()), fmi.getString(Tag.ImplementationVersionName, Implementation.getVersionName()));
+    @DisplayName("Read from Archive")
+    @Summary("Reads one instance from an indexed TAR/GZIP archive, decompressing only that instance")
+    @Throws(FileErrorsProvider.class)
+    @OutputResolver(output = DicomObjectOutputResolver.class)
+    public Object
+    readArchive(@DisplayName("Archive Filename")
+                @Path(type = FILE)
+                String archiveName,
+                @DisplayName("SOP Instance UID")
+                String sopInstanceUid
+    ) {
+        java.nio.file.Path archive = Paths.get(archiveName);
+        ArchiveIndex.Entry entry = readArchiveIndex(archive).findInstance(sopInstanceUid);
+        if (entry == null) throw new ModuleException(DicomError.NOT_FOUND, new RuntimeException("Instance Not Found in Archive"));
+        try (FileChannel channel = FileChannel.open(archive, StandardOpenOption.READ);
+             DicomInputStream dis = new DicomInputStream(ArchiveIndex.openEntry(channel, entry))) {
+            // The content is only readable through the archive, so it is all read now
+            dis.setIncludeBulkData(DicomInputStream.IncludeBulkData.YES);
+            return readDicomObject(dis);
+        } catch (IOException e) {
+            throw new ModuleException(DicomError.FILE_IO, e);
+        }
+    }
+
+    @MediaType("application/java")
+    @DisplayName("Read Archive Index")
+    @Summary("Lists the instances of an indexed TAR/GZIP archive, to pick those to read with Read from Archive")
+    @Throws(FileErrorsProvider.class)
+    public List<Map<String, Object>>
+    readArchiveIndex(@DisplayName("Archive Filename")
+                     @Path(type = FILE)
+                     String archiveName,
+                     @DisplayName("Series Instance UID")
+                     @Summary("Leave blank to list every instance")
+                     @Optional
+                     String seriesInstanceUid
+    ) {
+        ArchiveIndex index = readArchiveIndex(Paths.get(archiveName));
+        List<ArchiveIndex.Entry> entries = (seriesInstanceUid == null || seriesInstanceUid.isEmpty()) ? index.getEntries() : index.findSeries(seriesInstanceUid);
+        List<Map<String, Object>> list = new ArrayList<>();
+        for (ArchiveIndex.Entry entry : entries) {
+            Map<String, Object> map = new HashMap<>();
+            map.put("SOPInstanceUID", entry.getSopInstanceUid());
+            map.put("SeriesInstanceUID", entry.getSeriesInstanceUid());
+            map.put("StudyInstanceUID", entry.getStudyInstanceUid());
+            map.put("Entry", entry.getName());
+            map.put("Offset", entry.getOffset());
+            map.put("Length", entry.getLength());
+            list.add(map);
+        }
+        return list;
+    }
+
+    private static ArchiveIndex readArchiveIndex(java.nio.file.Path archive) {
+        java.nio.file.Path indexFile = ArchiveIndex.indexOf(archive);
+        if (!Files.exists(indexFile)) {
+            throw new ModuleException(DicomError.FILE_IO, new Exception("Archive has no index: " + indexFile));
+        }
+        try {
+            return ArchiveIndex.read(indexFile);
         } catch (IOException e) {
             throw new ModuleException(DicomError.FILE_IO, e);
         }
@@ -12,6 +12,7 @@ import org.dcm4che3.data.Tag;
 import org.dcm4che3.data.VR;
 import org.mule.module.dicom.api.content.DicomValue;
 import org.mule.module.dicom.internal.config.ScuOperationConfig;
+import org.mule.module.dicom.internal.connection.FindResultCache;
 import org.mule.module.dicom.internal.connection.MuleDimseRSPHandler;
 import org.mule.module.dicom.internal.connection.ScuConnection;
 import org.mule.module.dicom.internal.exception.DicomError;
@@ -43,6 +44,9 @@ public class FindScu {
     private final List<Map<String, DicomValue>> payload;
     public List<Map<String, DicomValue>> getPayload() { return payload; }
 
+    private final boolean truncated;
+    public boolean getTruncated() { return truncated; }
+
     private final boolean success;
     public boolean getSuccess() { return success; }
 
@@ -51,9 +55,10 @@ public class FindScu {
 
     private FindScu(MuleDimseRSPHandler handler) {
         attributes = new HashMap<>();
-        payload = new ArrayList<>();
         if (handler == null) {
+            payload = new ArrayList<>();
             success = false;
+            truncated = false;
             errorMessage = "Response Handler is NULL";
             messageId = -1;
             statusText = "Unset";
@@ -61,12 +66,12 @@ public class FindScu {
             messageId = handler.getMessageID();
             statusText = handler.getStatusText();
             AttribUtils.upsertMap(handler.getCommand(), attributes);
-            success = handler.getStatus() == 0;
+            // A query stopped at the maximum results ends with a Cancel status
+            truncated = handler.isTruncated();
+            success = handler.getStatus() == 0 || truncated;
             if (success) errorMessage = null;
             else errorMessage = String.format("%s: %s", statusText, attributes.getOrDefault("ErrorComment", "Unknown Error"));
-            for (DicomValue dicomValue : handler.getData().getAsList()) {
-                payload.add(dicomValue.getAsMap());
-            }
+            payload = handler.getResults();
         }
     }
 
@@ -74,12 +79,22 @@ public class FindScu {
         Attributes keys = AttribUtils.toKeys(searchKeys);
         String level = scuOperationConfig.getRetrieveLevelDefault();
         if (level != null) keys.setString(Tag.QueryRetrieveLevel, VR.CS, level);
+        FindResultCache<FindScu> cache = connection.getFindResultCache();
+        String cacheKey = null;
+        if (cache != null) {
+            cacheKey = FindResultCache.getKey(connection.getCalledAet(), scuOperationConfig, keys);
+            FindScu cached = cache.get(cacheKey);
+            if (cached != null) {
+                log.info("{}: C-FIND {} (cached)", connection, searchKeys);
+                return cached;
+            }
+        }
         MuleDimseRSPHandler handler;
         try {
             connection.start(scuOperationConfig, null);
             log.info("{}: C-FIND {}", connection, searchKeys);
             handler = connection.execute(keys, null);
-            if (handler == null || handler.isCanceled()) throw new ModuleException(DicomError.CANCELED, new RuntimeException("Canceled"));
+            if (handler == null || (handler.isCanceled() && !handler.isTruncated())) throw new ModuleException(DicomError.CANCELED, new RuntimeException("Canceled"));
         } catch (SSLException e) {
             throw new ModuleException(DicomError.SSL, e);
         } catch (IOException e) {
@@ -89,6 +104,8 @@ public class FindScu {
         } finally {
             connection.stop();
         }
-        return new FindScu(handler);
+        FindScu findScu = new FindScu(handler);
+        if (cache != null && findScu.getSuccess()) cache.put(cacheKey, findScu, level, findScu.getPayload().isEmpty());
+        return findScu;
     }
 }
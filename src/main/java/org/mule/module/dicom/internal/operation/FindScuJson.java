@@ -0,0 +1,142 @@
+/**
+ * Copyright (c) 2022 The Johns Hopkins University
+ * All rights reserved
+ *
+ * @author David J. Talley, Technology Innovation Center, Precision Medicine Analytics Platform, Johns Hopkins Medicine
+ *
+ */
+package org.mule.module.dicom.internal.operation;
+
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.data.VR;
+import org.dcm4che3.net.Status;
+import org.mule.module.dicom.internal.config.ScuOperationConfig;
+import org.mule.module.dicom.internal.connection.MuleJsonRSPHandler;
+import org.mule.module.dicom.internal.connection.ScuConnection;
+import org.mule.module.dicom.internal.exception.DicomError;
+import org.mule.module.dicom.internal.util.AttribUtils;
+import org.mule.runtime.extension.api.exception.ModuleException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.security.GeneralSecurityException;
+import java.util.Map;
+
+/**
+ * Streams C-FIND results as DICOM JSON while the responses arrive. The association stays open until the
+ * stream is read to the end or closed, and results not read before it is closed are canceled with C-CANCEL.
+ */
+public class FindScuJson extends InputStream {
+    private static final Logger log = LoggerFactory.getLogger(FindScuJson.class);
+    private final ScuConnection connection;
+    private final MuleJsonRSPHandler handler;
+    private byte[] chunk = new byte[0];
+    private int position = 0;
+    private boolean ended = false;
+    private boolean closed = false;
+
+    private FindScuJson(ScuConnection connection, MuleJsonRSPHandler handler) {
+        this.connection = connection;
+        this.handler = handler;
+    }
+
+    public static FindScuJson execute(ScuConnection connection, ScuOperationConfig scuOperationConfig, Map<String, Object> searchKeys,
+                                      boolean lineDelimited, int bufferSize) {
+        Attributes keys = AttribUtils.toKeys(searchKeys);
+        String level = scuOperationConfig.getRetrieveLevelDefault();
+        if (level != null) keys.setString(Tag.QueryRetrieveLevel, VR.CS, level);
+        try {
+            connection.start(scuOperationConfig, null);
+            log.info("{}: C-FIND {}", connection, searchKeys);
+            MuleJsonRSPHandler handler = new MuleJsonRSPHandler(connection.nextMessageId(), bufferSize, lineDelimited);
+            handler.setMaxResults(scuOperationConfig.getMaxResults());
+            connection.invoke(keys, null, handler);
+            return new FindScuJson(connection, handler);
+        } catch (SSLException e) {
+            connection.stop();
+            throw new ModuleException(DicomError.SSL, e);
+        } catch (IOException e) {
+            connection.stop();
+            throw new ModuleException(DicomError.CONNECTIVITY, e);
+        } catch (GeneralSecurityException e) {
+            connection.stop();
+            throw new ModuleException(DicomError.CLIENT_SECURITY, e);
+        } catch (InterruptedException e) {
+            connection.stop();
+            Thread t = Thread.currentThread();
+            t.getUncaughtExceptionHandler().uncaughtException(t, e);
+            t.interrupt();
+            throw new ModuleException(DicomError.CANCELED, e);
+        }
+    }
+
+    /**
+     * Moves to the next encoded result
+     * @return false at the end of the results
+     */
+    private boolean fill() throws IOException {
+        while (position >= chunk.length) {
+            if (ended || closed) return false;
+            byte[] next;
+            try {
+                next = handler.next();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("C-FIND stream interrupted");
+            }
+            if (next == null) {
+                ended = true;
+                int status = handler.getStatus();
+                if (status != Status.Success && status != Status.Cancel) {
+                    throw new IOException(String.format("%s: %s", handler.getStatusText(), handler.getCommand().getOrDefault("ErrorComment", "Unknown Error")));
+                }
+                return false;
+            }
+            chunk = next;
+            position = 0;
+        }
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) return -1;
+        return chunk[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (!fill()) return -1;
+        int count = Math.min(len, chunk.length - position);
+        System.arraycopy(chunk, position, b, off, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return chunk.length - position;
+    }
+
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        handler.close();
+        if (!handler.isComplete()) {
+            // The stream was closed before the last result
+            try {
+                connection.cancel(handler);
+            } catch (IOException e) {
+                log.debug("{}: Unable to cancel C-FIND: {}", connection, e.getMessage());
+            }
+        }
+        connection.stop();
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright (c) 2022 The Johns Hopkins University
+ * All rights reserved
+ *
+ * @author David J. Talley, Technology Innovation Center, Precision Medicine Analytics Platform, Johns Hopkins Medicine
+ *
+ */
+package org.mule.module.dicom.internal.operation;
+
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.data.VR;
+import org.dcm4che3.net.Status;
+import org.mule.module.dicom.api.content.DicomValue;
+import org.mule.module.dicom.internal.config.ScuOperationConfig;
+import org.mule.module.dicom.internal.connection.MuleStreamRSPHandler;
+import org.mule.module.dicom.internal.connection.ScuConnection;
+import org.mule.module.dicom.internal.exception.DicomError;
+import org.mule.module.dicom.internal.util.AttribUtils;
+import org.mule.runtime.extension.api.exception.ModuleException;
+import org.mule.runtime.extension.api.runtime.streaming.PagingProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLException;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Streams C-FIND results to the flow page by page as the responses arrive. Results are never held in memory
+ * beyond the buffer, and the association is held back while the buffer is full.
+ */
+public class FindScuStream implements PagingProvider<ScuConnection, Map<String, DicomValue>> {
+    private static final Logger log = LoggerFactory.getLogger(FindScuStream.class);
+    private final ScuOperationConfig scuOperationConfig;
+    private final Map<String, Object> searchKeys;
+    private final int pageSize;
+    private final int bufferSize;
+    private MuleStreamRSPHandler handler = null;
+
+    public FindScuStream(ScuOperationConfig scuOperationConfig, Map<String, Object> searchKeys, int pageSize, int bufferSize) {
+        this.scuOperationConfig = scuOperationConfig;
+        this.searchKeys = searchKeys;
+        this.pageSize = Math.max(pageSize, 1);
+        this.bufferSize = bufferSize;
+    }
+
+    @Override
+    public List<Map<String, DicomValue>> getPage(ScuConnection connection) {
+        if (handler == null) start(connection);
+        List<Map<String, DicomValue>> page = new ArrayList<>(pageSize);
+        try {
+            if (!handler.next(page, pageSize)) {
+                int status = handler.getStatus();
+                if (status != Status.Success && status != Status.Cancel) {
+                    String errorMessage = String.format("%s: %s", handler.getStatusText(), handler.getCommand().getOrDefault("ErrorComment", "Unknown Error"));
+                    throw new ModuleException(DicomError.REQUEST_ERROR, new RuntimeException(errorMessage));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread t = Thread.currentThread();
+            t.getUncaughtExceptionHandler().uncaughtException(t, e);
+            t.interrupt();
+            throw new ModuleException(DicomError.CANCELED, e);
+        }
+        return page;
+    }
+
+    private void start(ScuConnection connection) {
+        Attributes keys = AttribUtils.toKeys(searchKeys);
+        String level = scuOperationConfig.getRetrieveLevelDefault();
+        if (level != null) keys.setString(Tag.QueryRetrieveLevel, VR.CS, level);
+        try {
+            connection.start(scuOperationConfig, null);
+            log.info("{}: C-FIND {}", connection, searchKeys);
+            handler = new MuleStreamRSPHandler(connection.nextMessageId(), bufferSize);
+            handler.setMaxResults(scuOperationConfig.getMaxResults());
+            connection.invoke(keys, null, handler);
+        } catch (SSLException e) {
+            connection.stop();
+            throw new ModuleException(DicomError.SSL, e);
+        } catch (IOException e) {
+            connection.stop();
+            throw new ModuleException(DicomError.CONNECTIVITY, e);
+        } catch (GeneralSecurityException e) {
+            connection.stop();
+            throw new ModuleException(DicomError.CLIENT_SECURITY, e);
+        } catch (InterruptedException e) {
+            connection.stop();
+            Thread t = Thread.currentThread();
+            t.getUncaughtExceptionHandler().uncaughtException(t, e);
+            t.interrupt();
+            throw new ModuleException(DicomError.CANCELED, e);
+        }
+    }
+
+    @Override
+    public Optional<Integer> getTotalResults(ScuConnection connection) {
+        return Optional.empty();
+    }
+
+    @Override
+    public void close(ScuConnection connection) {
+        if (handler == null) return;
+        handler.close();
+        if (!handler.isComplete()) {
+            // The flow stopped reading before the last result
+            try {
+                connection.cancel(handler);
+            } catch (IOException e) {
+                log.debug("{}: Unable to cancel C-FIND: {}", connection, e.getMessage());
+            }
+        }
+        connection.stop();
+        handler = null;
+    }
+
+    @Override
+    public boolean useStickyConnections() {
+        return true;
+    }
+}
@@ -48,8 +48,8 @@ public class MoveScu {
 
     private MoveScu(MuleDimseRSPHandler handler) {
         attributes = new HashMap<>();
-        payload = new ArrayList<>();
         if (handler == null) {
+            payload = new ArrayList<>();
             success = false;
             errorMessage = "Response Handler is NULL";
             messageId = -1;
@@ -61,9 +61,7 @@ public class MoveScu {
             success = handler.getStatus() == 0;
             if (success) errorMessage = null;
             else errorMessage = String.format("%s: %s", statusText, attributes.getOrDefault("ErrorComment", "Unknown Error"));
-            for (DicomValue dicomValue : handler.getData().getAsList()) {
-                payload.add(dicomValue.getAsMap());
-            }
+            payload = handler.getResults();
         }
     }
 
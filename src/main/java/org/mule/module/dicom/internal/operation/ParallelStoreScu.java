@@ -0,0 +1,102 @@
+/**
+ * Copyright (c) 2022 The Johns Hopkins University
+ * All rights reserved
+ *
+ * @author David J. Talley, Technology Innovation Center, Precision Medicine Analytics Platform, Johns Hopkins Medicine
+ *
+ */
+package org.mule.module.dicom.internal.operation;
+
+import org.mule.module.dicom.internal.connection.ScuConnection;
+import org.mule.module.dicom.internal.exception.DicomError;
+import org.mule.module.dicom.internal.util.DirectoryWalker;
+import org.mule.runtime.extension.api.exception.ModuleException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Spreads a batch of files over several associations to the same remote Application Entity.
+ * Each association has its own worker, and the workers take the next file from the folder walk
+ * as soon as they are done with the previous one.
+ */
+public class ParallelStoreScu {
+    private static final Logger log = LoggerFactory.getLogger(ParallelStoreScu.class);
+
+    private ParallelStoreScu() { }
+
+    /**
+     * @param storeScu sends over the operation connection, and receives the statuses of every worker
+     * @param connection the operation connection, forked for every additional association
+     * @param walker lists the files to send
+     * @param associations number of associations to open
+     */
+    public static void execute(StoreScu storeScu, ScuConnection connection, DirectoryWalker walker, int associations) throws IOException {
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        ExecutorService executor = Executors.newFixedThreadPool(associations);
+        List<Future<?>> futures = new ArrayList<>();
+        List<StoreScu> forks = new ArrayList<>();
+        try {
+            log.debug("{}: Sending files over {} associations", connection, associations);
+            futures.add(executor.submit(() -> send(storeScu, walker, failure)));
+            for (int i = 1; i < associations; i++) {
+                ScuConnection forkConnection = connection.fork();
+                StoreScu fork = storeScu.fork(forkConnection);
+                forks.add(fork);
+                futures.add(executor.submit(() -> {
+                    try {
+                        send(fork, walker, failure);
+                    } finally {
+                        fork.close();
+                        forkConnection.disconnect();
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread t = Thread.currentThread();
+            t.getUncaughtExceptionHandler().uncaughtException(t, e);
+            t.interrupt();
+            failure.compareAndSet(null, new ModuleException(DicomError.CANCELED, e));
+        } catch (ExecutionException e) {
+            failure.compareAndSet(null, new ModuleException(DicomError.CONNECTIVITY, e.getCause()));
+        } finally {
+            walker.close();
+            executor.shutdown();
+            for (StoreScu fork : forks) {
+                storeScu.addStatuses(fork.getStatuses());
+            }
+        }
+        Exception e = failure.get();
+        if (e instanceof ModuleException) throw (ModuleException) e;
+        if (e instanceof IOException) throw (IOException) e;
+        if (e != null) throw new ModuleException(DicomError.CONNECTIVITY, e);
+    }
+
+    private static void send(StoreScu storeScu, DirectoryWalker walker, AtomicReference<Exception> failure) {
+        try {
+            Path file;
+            while (failure.get() == null && (file = walker.next()) != null) {
+                storeScu.storeFile(file);
+            }
+        } catch (InterruptedException e) {
+            Thread t = Thread.currentThread();
+            t.getUncaughtExceptionHandler().uncaughtException(t, e);
+            t.interrupt();
+            failure.compareAndSet(null, new ModuleException(DicomError.CANCELED, e));
+        } catch (IOException | RuntimeException e) {
+            failure.compareAndSet(null, e);
+        }
+    }
+}
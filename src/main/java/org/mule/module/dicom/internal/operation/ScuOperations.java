@@ -9,22 +9,26 @@ package org.mule.module.dicom.internal.operation;
 
 import org.dcm4che3.data.UID;
 import org.dcm4che3.io.DicomInputStream;
+import org.dcm4che3.net.Status;
 import org.mule.module.dicom.api.content.*;
 import org.mule.module.dicom.api.parameter.*;
 import org.mule.module.dicom.internal.config.GetScuResultsValueProvider;
 import org.mule.module.dicom.internal.config.ScuType;
+import org.mule.module.dicom.internal.connection.MuleDimseRSPHandler;
 import org.mule.module.dicom.internal.connection.ScuConnection;
 import org.mule.module.dicom.internal.notification.DownloadNotificationAction;
 import org.mule.module.dicom.internal.notification.DownloadNotificationActionProvider;
 import org.mule.module.dicom.internal.store.DicomFileType;
+import org.mule.module.dicom.internal.store.IngestFile;
 import org.mule.module.dicom.internal.store.MuleFileStore;
 import org.mule.module.dicom.internal.store.MuleGetScuStore;
 import org.mule.module.dicom.internal.store.MuleObjectStore;
-import org.mule.module.dicom.internal.util.AttribUtils;
 import org.mule.module.dicom.internal.config.ScuOperationConfig;
 import org.mule.module.dicom.internal.exception.DicomError;
 import org.mule.module.dicom.internal.exception.ScuErrorsProvider;
 import org.dcm4che3.data.Attributes;
+import org.mule.module.dicom.internal.util.ChangeTagPlan;
+import org.mule.module.dicom.internal.util.DirectoryWalker;
 import org.mule.module.dicom.internal.util.StoreUtils;
 import org.mule.runtime.api.lock.LockFactory;
 import org.mule.runtime.api.meta.ExpressionSupport;
@@ -40,21 +44,34 @@ import org.mule.runtime.extension.api.annotation.param.display.*;
 import org.mule.runtime.extension.api.annotation.values.OfValues;
 import org.mule.runtime.extension.api.exception.ModuleException;
 import org.mule.runtime.extension.api.notification.NotificationEmitter;
+import org.mule.runtime.extension.api.runtime.streaming.PagingProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.locks.Lock;
 
 import static org.mule.runtime.api.meta.model.display.PathModel.Type.DIRECTORY;
 
 public class ScuOperations {
+    private static final Logger log = LoggerFactory.getLogger(ScuOperations.class);
     private static final String NOT_FOUND = "C-GET Received 0 Files";
+    // Files listed ahead of the associations, and folders read at the same time, when sending folders
+    private static final int WALK_QUEUE_SIZE = 1000;
+    private static final int WALK_THREADS = Math.max(4, Runtime.getRuntime().availableProcessors());
     @Inject
     private LockFactory lockFactory;
     @Inject
@@ -64,7 +81,7 @@ public class ScuOperations {
     @DisplayName("Echo SCU")
     @Summary("Performs C-ECHO as a Service Class User with a remote Application Entity.")
     @Throws(ScuErrorsProvider.class)
-    public synchronized EchoScuPayload
+    public EchoScuPayload
     echoScu(@Connection ScuConnection connection,
             @ParameterGroup(name=Timings.PARAMETER_GROUP)
             Timings timings
@@ -84,7 +101,7 @@ public class ScuOperations {
     @DisplayName("Find SCU")
     @Summary("Performs C-FIND as a Service Class User with a remote Application Entity.")
     @Throws(ScuErrorsProvider.class)
-    public synchronized FindScuPayload
+    public FindScuPayload
     findScu(@Connection ScuConnection connection,
             @ParameterGroup(name=TagSearch.PARAMETER_GROUP)
             TagSearch tagSearch,
@@ -98,12 +115,9 @@ public class ScuOperations {
         scuOperationConfig.setRetrieveLevel(presentationContext.getRetrieveLevel());
         scuOperationConfig.setTransferSyntax(presentationContext.getTransferSyntax());
         scuOperationConfig.setCancelAfter(timings.getCancelAfter());
+        scuOperationConfig.setMaxResults(tagSearch.getMaxResults());
 
-        Map<String, Object> keys = new HashMap<>(tagSearch.getSearchKeys());
-        for (String tagName : tagSearch.getResponseTags()) {
-            if (!keys.containsKey("tagName")) keys.put(tagName, "");
-        }
-        FindScu findScu = FindScu.execute(connection, scuOperationConfig, keys);
+        FindScu findScu = FindScu.execute(connection, scuOperationConfig, getFindKeys(tagSearch));
         if (!findScu.getSuccess()) {
             throw new ModuleException(DicomError.REQUEST_ERROR, new RuntimeException(findScu.getErrorMessage()));
         }
@@ -113,11 +127,79 @@ public class ScuOperations {
         return new FindScuPayload(findScu);
     }
 
+    @DisplayName("Find SCU Stream")
+    @Summary("Performs C-FIND as a Service Class User with a remote Application Entity, streaming each result as it is received.")
+    @Throws(ScuErrorsProvider.class)
+    public PagingProvider<ScuConnection, Map<String, DicomValue>>
+    findScuStream(@ParameterGroup(name=TagSearch.PARAMETER_GROUP)
+                  TagSearch tagSearch,
+                  @ParameterGroup(name=PresentationContext.PARAMETER_GROUP)
+                  PresentationContext presentationContext,
+                  @ParameterGroup(name=Timings.PARAMETER_GROUP)
+                  Timings timings,
+                  @DisplayName("Page Size")
+                  @Summary("Maximum results handed to the flow at a time")
+                  @Optional(defaultValue = "100")
+                  int pageSize,
+                  @DisplayName("Buffer Size")
+                  @Summary("Results received ahead of the flow before the remote server is held back")
+                  @Optional(defaultValue = "1000")
+                  int bufferSize
+    ) {
+        ScuOperationConfig scuOperationConfig = new ScuOperationConfig(ScuType.FIND);
+        scuOperationConfig.setInformationModel(presentationContext.getInformationModel());
+        scuOperationConfig.setRetrieveLevel(presentationContext.getRetrieveLevel());
+        scuOperationConfig.setTransferSyntax(presentationContext.getTransferSyntax());
+        scuOperationConfig.setCancelAfter(timings.getCancelAfter());
+        scuOperationConfig.setMaxResults(tagSearch.getMaxResults());
+
+        return new FindScuStream(scuOperationConfig, getFindKeys(tagSearch), pageSize, bufferSize);
+    }
+
+    @MediaType(value = "application/json", strict = false)
+    @DisplayName("Find SCU JSON")
+    @Summary("Performs C-FIND as a Service Class User with a remote Application Entity, writing each result as DICOM JSON as it is received.")
+    @Throws(ScuErrorsProvider.class)
+    public InputStream
+    findScuJson(@Connection ScuConnection connection,
+                @ParameterGroup(name=TagSearch.PARAMETER_GROUP)
+                TagSearch tagSearch,
+                @ParameterGroup(name=PresentationContext.PARAMETER_GROUP)
+                PresentationContext presentationContext,
+                @ParameterGroup(name=Timings.PARAMETER_GROUP)
+                Timings timings,
+                @DisplayName("Line Delimited")
+                @Summary("Write one JSON object per line (NDJSON) instead of a JSON array")
+                @Optional(defaultValue = "false")
+                boolean lineDelimited,
+                @DisplayName("Buffer Size")
+                @Summary("Results received ahead of the flow before the remote server is held back")
+                @Optional(defaultValue = "1000")
+                int bufferSize
+    ) {
+        ScuOperationConfig scuOperationConfig = new ScuOperationConfig(ScuType.FIND);
+        scuOperationConfig.setInformationModel(presentationContext.getInformationModel());
+        scuOperationConfig.setRetrieveLevel(presentationContext.getRetrieveLevel());
+        scuOperationConfig.setTransferSyntax(presentationContext.getTransferSyntax());
+        scuOperationConfig.setCancelAfter(timings.getCancelAfter());
+        scuOperationConfig.setMaxResults(tagSearch.getMaxResults());
+
+        return FindScuJson.execute(connection, scuOperationConfig, getFindKeys(tagSearch), lineDelimited, bufferSize);
+    }
+
+    private Map<String, Object> getFindKeys(TagSearch tagSearch) {
+        Map<String, Object> keys = new HashMap<>(tagSearch.getSearchKeys());
+        for (String tagName : tagSearch.getResponseTags()) {
+            if (!keys.containsKey("tagName")) keys.put(tagName, "");
+        }
+        return keys;
+    }
+
     @DisplayName("Get SCU to File System")
     @Summary("Performs C-GET as a Service Class User with a remote Application Entity.")
     @Fires(DownloadNotificationActionProvider.class)
     @Throws(ScuErrorsProvider.class)
-    public synchronized GetScuPayload
+    public GetScuPayload
     getScu(@Connection ScuConnection connection,
            @DisplayName("Folder Name")
            @Summary("Folder where all files are saved")
@@ -126,6 +208,8 @@ public class ScuOperations {
            @Summary("Compress all files into a single tar/gzip")
            @Optional(defaultValue = "false")
            boolean compressFiles,
+           @ParameterGroup(name=Compression.PARAMETER_GROUP)
+           Compression compression,
            @ParameterGroup(name=StoreSearch.PARAMETER_GROUP)
            StoreSearch storeSearch,
            @ParameterGroup(name=PresentationContext.PARAMETER_GROUP)
@@ -149,7 +233,7 @@ public class ScuOperations {
 
             MuleFileStore muleStore;
             try {
-                muleStore = new MuleFileStore(folderName, notificationEmitter, compressFiles);
+                muleStore = new MuleFileStore(folderName, notificationEmitter, compressFiles, compression);
             } catch (IOException e) {
                 throw new ModuleException(DicomError.FILE_IO, e);
             }
@@ -172,7 +256,7 @@ public class ScuOperations {
     @Summary("Performs C-GET as a Service Class User with a remote Application Entity. Send all DICOM objects to an Object Store.")
     @Fires(DownloadNotificationActionProvider.class)
     @Throws(ScuErrorsProvider.class)
-    public synchronized GetScuPayload
+    public GetScuPayload
     getScuObjectStore(@Connection ScuConnection connection,
                       @ParameterDsl(allowInlineDefinition = false) @Expression(ExpressionSupport.NOT_SUPPORTED) ObjectStore<byte[]> objectStore,
                       @Summary("Prefix to use for each key name. Each file's Instance UID will be appended, following a colon.") String keyNamePrefix,
@@ -217,7 +301,7 @@ public class ScuOperations {
     @Summary("Performs C-GET as a Service Class User with a remote Application Entity. Send all DICOM objects to a Get SCU Results flow listener.")
     @Fires(DownloadNotificationActionProvider.class)
     @Throws(ScuErrorsProvider.class)
-    public synchronized GetScuPayload
+    public GetScuPayload
     getScuFlowStore(@Connection ScuConnection connection,
                     @OfValues(GetScuResultsValueProvider.class) @ParameterDsl(allowInlineDefinition = false) @Expression(ExpressionSupport.NOT_SUPPORTED)
                             @Summary("Name of a flow that contains a Get SCU Results listener")
@@ -264,7 +348,7 @@ public class ScuOperations {
     @DisplayName("Move SCU")
     @Summary("Performs C-MOVE as a Service Class User with a remote Application Entity.")
     @Throws(ScuErrorsProvider.class)
-    public synchronized MoveScuPayload
+    public MoveScuPayload
     moveScu(@Connection ScuConnection connection,
             @ParameterGroup(name=StoreSearch.PARAMETER_GROUP)
             StoreSearch storeSearch,
@@ -292,7 +376,7 @@ public class ScuOperations {
     @DisplayName("Store SCU")
     @Summary("Performs C-STORE as a Service Class User with a remote Application Entity.")
     @Throws(ScuErrorsProvider.class)
-    public synchronized List<String>
+    public List<String>
     storeScu(@Connection ScuConnection connection,
              @ParameterGroup(name=StoreImage.PARAMETER_GROUP)
              StoreImage storeImage,
@@ -305,12 +389,17 @@ public class ScuOperations {
              @Example("#[{\"PatientID\": \"XXXXXXXX\", \"0x67810010\": \"JohnsHopkinsMedicine\", \"0x67811000\": \"${StudyDate}_${AccessionNumber}\"}]")
              Map<String, String> changeTags,
              @ParameterGroup(name=Timings.PARAMETER_GROUP)
-             Timings timings
+             Timings timings,
+             @ParameterGroup(name=StoreConcurrency.PARAMETER_GROUP)
+             StoreConcurrency storeConcurrency
     ) {
         ScuOperationConfig scuOperationConfig = new ScuOperationConfig(ScuType.STORE);
         scuOperationConfig.setCancelAfter(timings.getCancelAfter());
-        List<String> iuidList = new ArrayList<>();
+        List<String> iuidList = Collections.synchronizedList(new ArrayList<>());
         List<String> keys = new ArrayList<>();
+        ChangeTagPlan changeTagPlan = ChangeTagPlan.compile(changeTags);
+        StoreScu storeScu = new StoreScu(connection, scuOperationConfig, changeTagPlan, iuidList);
+        storeScu.setOutstandingRequests(storeConcurrency.getOutstandingRequests());
         try {
             if (storeImage.getDicomObject() != null) {
                 Object dicomObject = storeImage.getDicomObject();
@@ -320,55 +409,45 @@ public class ScuOperations {
 
                 // Send the content
                 Attributes data = dicom.getContent();
-                AttribUtils.updateTags(data, changeTags);
-                StoreScu.execute(connection, scuOperationConfig, data, null, iuidList);
+                changeTagPlan.apply(data);
+                storeScu.store(data, null);
             } else if (storeImage.getFileName() != null) {
-                String fileName = storeImage.getFileName();
-                DicomFileType dft = DicomFileType.parse(fileName);
-                if (DicomFileType.canStore(dft)) {
-                    StoreScu.execute(connection, scuOperationConfig, fileName, dft, changeTags, iuidList);
-                } else {
-                    throw new ModuleException(DicomError.FILE_IO, new RuntimeException("File cannot be read or is an unknown type"));
+                try (IngestFile file = IngestFile.open(storeImage.getFileName())) {
+                    if (!DicomFileType.canStore(file.getType())) {
+                        throw new ModuleException(DicomError.FILE_IO, new RuntimeException("File cannot be read or is an unknown type"));
+                    }
+                    storeScu.store(file);
                 }
             } else if (storeImage.getFolderName() != null) {
                 String folderName = storeImage.getFolderName();
                 if (!DicomFileType.parse(folderName).equals(DicomFileType.DIRECTORY))
                     throw new ModuleException(DicomError.FILE_IO, new RuntimeException("Cannot read Folder"));
-                List<java.nio.file.Path> fileList = StoreUtils.getFileList(folderName);
-                for (java.nio.file.Path fileName : fileList) {
-                    DicomFileType dft = DicomFileType.parse(fileName.toString());
-                    if (DicomFileType.canStore(dft)) { // Quietly ignore anything we cannot store
-                        StoreScu.execute(connection, scuOperationConfig, fileName.toString(), dft, changeTags, iuidList);
-                    }
-                }
+                storeFiles(storeScu, connection, Collections.singletonList(Paths.get(folderName)), storeConcurrency.getAssociations());
             } else if (storeImage.getListOfFiles() != null) {
-                // Flatten the list, since it could be a combination of filenames and/or folders
-                Map<String, DicomFileType> allFiles = new HashMap<>();
+                // The list could be a combination of filenames and/or folders
+                List<java.nio.file.Path> roots = new ArrayList<>();
+                Set<java.nio.file.Path> listedFiles = new HashSet<>();
                 for (String fileName : storeImage.getListOfFiles()) {
-                    DicomFileType dft = DicomFileType.parse(fileName);
-                    if (DicomFileType.canStore(dft)) {
-                        allFiles.put(fileName, dft);
-                    } else if (dft.equals(DicomFileType.DIRECTORY)) {
-                        List<java.nio.file.Path> fileList = StoreUtils.getFileList(fileName);
-                        for (java.nio.file.Path file : fileList) {
-                            DicomFileType dft2 = DicomFileType.parse(file.toString());
-                            if (DicomFileType.canStore(dft2)) { // Quietly ignore anything we cannot store
-                                allFiles.put(file.toString(), dft2);
-                            }
+                    // Files are only classified when they are sent, so each one is opened once
+                    java.nio.file.Path path = Paths.get(fileName);
+                    if (!Files.isDirectory(path)) {
+                        if (!Files.isReadable(path)) {
+                            throw new ModuleException(DicomError.FILE_IO, new RuntimeException("File cannot be read or is an unknown type"));
                         }
-                    } else {
-                        throw new ModuleException(DicomError.FILE_IO, new RuntimeException("File cannot be read or is an unknown type"));
+                        listedFiles.add(path);
                     }
+                    roots.add(path);
                 }
-                for (Map.Entry<String, DicomFileType> entry : allFiles.entrySet()) {
-                    StoreScu.execute(connection, scuOperationConfig, entry.getKey(), entry.getValue(), changeTags, iuidList);
-                }
+                storeScu.setListedFiles(listedFiles);
+                storeFiles(storeScu, connection, roots, storeConcurrency.getAssociations());
             } else if (storeImage.getObjectStore() != null) {
-                storeScuFromObjectStore(connection, storeImage.getObjectStore(), changeTags, scuOperationConfig, iuidList, keys);
+                storeScuFromObjectStore(storeScu, storeImage.getObjectStore(), changeTagPlan, keys);
             }
         } catch (IOException e) {
             throw new ModuleException(DicomError.CONNECTIVITY, e);
         } finally {
+            storeScu.close();
+            logStoreStatuses(connection, storeScu.getStatuses());
             if (deleteSourceFiles) {
                 if (storeImage.getFileName() != null) {
                     StoreUtils.deleteFolder(storeImage.getFileName());
@@ -394,7 +473,38 @@ public class ScuOperations {
 
     }
 
-    private void storeScuFromObjectStore(ScuConnection connection, ObjectStore<byte[]> objectStore, Map<String, String> changeTags, ScuOperationConfig scuOperationConfig, List<String> iuidList, List<String> keys) {
+    private void logStoreStatuses(ScuConnection connection, Map<String, Integer> statuses) {
+        for (Map.Entry<String, Integer> entry : statuses.entrySet()) {
+            int status = entry.getValue();
+            if (status != Status.Success && (status & 0xF000) != Status.CoercionOfDataElements) {
+                log.warn("{}: C-STORE {} returned {}", connection, entry.getKey(), MuleDimseRSPHandler.getStatusText(status));
+            }
+        }
+    }
+
+    /**
+     * Sends every file under the roots over one association, or spread over several, while the folders are
+     * still being walked. Anything that cannot be stored is quietly ignored.
+     */
+    private void storeFiles(StoreScu storeScu, ScuConnection connection, List<java.nio.file.Path> roots, int associations) throws IOException {
+        try (DirectoryWalker walker = new DirectoryWalker(roots, WALK_QUEUE_SIZE, WALK_THREADS)) {
+            if (associations > 1) {
+                ParallelStoreScu.execute(storeScu, connection, walker, associations);
+                return;
+            }
+            java.nio.file.Path file;
+            while ((file = walker.next()) != null) {
+                storeScu.storeFile(file);
+            }
+        } catch (InterruptedException e) {
+            Thread t = Thread.currentThread();
+            t.getUncaughtExceptionHandler().uncaughtException(t, e);
+            t.interrupt();
+            throw new ModuleException(DicomError.CANCELED, e);
+        }
+    }
+
+    private void storeScuFromObjectStore(StoreScu storeScu, ObjectStore<byte[]> objectStore, ChangeTagPlan changeTagPlan, List<String> keys) {
         try {
             for (String keyName : objectStore.allKeys()) {
                 try (ByteArrayInputStream bais = new ByteArrayInputStream(objectStore.retrieve(keyName))) {
@@ -402,8 +512,8 @@ public class ScuOperations {
                         dis.setIncludeBulkData(DicomInputStream.IncludeBulkData.URI);
                         Attributes fmi = dis.getFileMetaInformation();
                         Attributes data = dis.readDataset();
-                        AttribUtils.updateTags(data, changeTags);
-                        StoreScu.execute(connection, scuOperationConfig, data, fmi, iuidList);
+                        changeTagPlan.apply(data);
+                        storeScu.store(data, fmi);
                         keys.add(keyName);
                     }
                 }
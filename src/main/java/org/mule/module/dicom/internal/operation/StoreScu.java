@@ -10,172 +10,467 @@ package org.mule.module.dicom.internal.operation;
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
 import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.compress.utils.CloseShieldFilterInputStream;
 import org.dcm4che3.data.Attributes;
 import org.dcm4che3.data.Tag;
 import org.dcm4che3.data.UID;
 import org.dcm4che3.io.DicomInputStream;
+import org.dcm4che3.net.DataWriter;
+import org.dcm4che3.net.DataWriterAdapter;
 import org.mule.module.dicom.internal.config.ScuOperationConfig;
 import org.mule.module.dicom.internal.connection.MuleDimseRSPHandler;
+import org.mule.module.dicom.internal.connection.MuleStoreRSPCollector;
 import org.mule.module.dicom.internal.connection.ScuConnection;
 import org.mule.module.dicom.internal.exception.DicomError;
 import org.mule.module.dicom.internal.store.DicomFileType;
+import org.mule.module.dicom.internal.store.IngestFile;
 import org.mule.module.dicom.internal.util.AttribUtils;
-import org.mule.module.dicom.internal.util.StoreUtils;
+import org.mule.module.dicom.internal.util.ChangeTagPlan;
+import org.mule.module.dicom.internal.util.FileDataWriter;
+import org.mule.module.dicom.internal.util.HeaderRewriter;
 import org.mule.runtime.extension.api.exception.ModuleException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.net.ssl.SSLException;
-import java.io.File;
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
 import java.security.GeneralSecurityException;
 import java.util.*;
 
+/**
+ * Sends a batch of instances over as few associations as possible. Every SOP Class / Transfer Syntax pair
+ * known for the batch is proposed when the association opens, and a new association is only opened when
+ * an instance needs a pair that was not proposed (new, or beyond the 128 presentation context limit).
+ */
 public class StoreScu {
     private static final Logger log = LoggerFactory.getLogger(StoreScu.class);
+    private static final int ARCHIVE_BUFFER_SIZE = 64 * 1024;
+    // An archive entry whose header is longer than this cannot be read again to decode it
+    private static final int HEADER_MARK_LIMIT = 1024 * 1024;
     private final ScuConnection connection;
     private final ScuOperationConfig scuOperationConfig;
-    private final Map<String, String> changeTags;
+    private final ChangeTagPlan changeTags;
     private final List<String> iuidList;
+    private final Map<String, Integer> statuses = Collections.synchronizedMap(new LinkedHashMap<>());
+    private boolean started = false;
+    private int maxOutstanding = 0;
+    private int outstandingRequests = 1;
+    private Set<Path> listedFiles = Collections.emptySet();
+    private MuleStoreRSPCollector collector = null;
+
+    public StoreScu(ScuConnection connection, ScuOperationConfig scuOperationConfig, Map<String, String> changeTags, List<String> iuidList) {
+        this(connection, scuOperationConfig, ChangeTagPlan.compile(changeTags), iuidList);
+    }
 
-    private StoreScu(ScuConnection connection, ScuOperationConfig scuOperationConfig, Map<String, String> changeTags, List<String> iuidList) {
+    public StoreScu(ScuConnection connection, ScuOperationConfig scuOperationConfig, ChangeTagPlan changeTags, List<String> iuidList) {
         this.connection = connection;
         this.scuOperationConfig = scuOperationConfig;
         this.changeTags = changeTags;
         this.iuidList = iuidList;
     }
 
-    public void execute(String fileName) throws IOException {
+    /**
+     * Number of C-STORE requests sent without waiting for their responses. 1 waits for each response.
+     */
+    public void setOutstandingRequests(int outstandingRequests) { this.outstandingRequests = Math.max(outstandingRequests, 1); }
+
+    /**
+     * Files named explicitly by the caller, which fail when they cannot be stored instead of being ignored
+     */
+    public void setListedFiles(Set<Path> listedFiles) { this.listedFiles = listedFiles; }
+
+    /**
+     * Creates a StoreScu sending over another connection, sharing the SOP Instance UID list
+     * and starting with the presentation contexts known so far
+     */
+    public StoreScu fork(ScuConnection connection) {
+        StoreScu storeScu = new StoreScu(connection, scuOperationConfig.copy(), changeTags, iuidList);
+        storeScu.setOutstandingRequests(outstandingRequests);
+        storeScu.setListedFiles(listedFiles);
+        return storeScu;
+    }
+
+    /**
+     * The most C-STORE requests that were outstanding at the same time on one association of this batch
+     */
+    public int getMaxOutstanding() { return maxOutstanding; }
+
+    public void addStatuses(Map<String, Integer> statuses) {
+        this.statuses.putAll(statuses);
+    }
+
+    /**
+     * The final status of every instance sent, in the order the responses arrived
+     */
+    public Map<String, Integer> getStatuses() {
+        synchronized (statuses) {
+            return new LinkedHashMap<>(statuses);
+        }
+    }
+
+    /**
+     * Classifies and sends a file with a single open, quietly ignoring anything that cannot be stored
+     * unless it is one of the listed files
+     */
+    public void storeFile(Path path) throws IOException {
+        try (IngestFile file = IngestFile.open(path.toString())) {
+            if (!DicomFileType.canStore(file.getType()) && listedFiles.contains(path)) {
+                throw new ModuleException(DicomError.FILE_IO, new RuntimeException("File cannot be read or is an unknown type"));
+            }
+            store(file);
+        }
+    }
+
+    public void store(String fileName) throws IOException {
+        try (IngestFile file = IngestFile.open(fileName)) {
+            storeDicom(file);
+        }
+    }
+
+    private void storeDicom(IngestFile file) throws IOException {
+        if (storeEncoded(file)) return;
         Attributes data;
         Attributes fmi;
-        File file = new File(fileName);
-        try (DicomInputStream dis = new DicomInputStream(file)) {
+        try (DicomInputStream dis = file.newDicomInputStream()) {
             dis.setIncludeBulkData(DicomInputStream.IncludeBulkData.URI);
             fmi = dis.getFileMetaInformation();
             data = dis.readDataset();
         }
-        AttribUtils.updateTags(data, changeTags);
-        StoreScu.execute(connection, scuOperationConfig, data, fmi, iuidList);
+        changeTags.apply(data);
+        store(data, fmi);
     }
 
-    public static void execute(ScuConnection connection, ScuOperationConfig scuOperationConfig, Attributes data, Attributes fmi, List<String> iuidList) {
+    /**
+     * Sends the data set of a file without decoding it, when the association accepts the file's Transfer Syntax.
+     * Without Change Tags the data set is sent as is. When only tags before Pixel Data change, the header is
+     * rewritten and the pixel data copied byte for byte.
+     * @return false if the file has to be decoded instead
+     */
+    private boolean storeEncoded(IngestFile file) throws IOException {
+        if (!canStoreEncoded()) return false;
+        try (DicomInputStream dis = file.newDicomInputStream()) {
+            Attributes fmi = dis.readFileMetaInformation();
+            return storeEncoded(dis, fmi, new FileDataWriter(file.getChannel(), dis.getPosition()));
+        }
+    }
+
+    private boolean canStoreEncoded() {
+        return changeTags.isEmpty() || changeTags.isHeaderOnly();
+    }
+
+    /**
+     * @param dis Positioned after the File Meta Information
+     * @param dataSet Writes the data set as is, from the position of dis
+     * @return false if the data set has to be decoded instead
+     */
+    private boolean storeEncoded(DicomInputStream dis, Attributes fmi, DataWriter dataSet) throws IOException {
+        boolean asIs = changeTags.isEmpty();
+        if (fmi == null) return false;
+        String cuid = fmi.getString(Tag.MediaStorageSOPClassUID);
+        String iuid = fmi.getString(Tag.MediaStorageSOPInstanceUID);
+        String tsuid = fmi.getString(Tag.TransferSyntaxUID);
+        if (cuid == null || iuid == null || iuid.isEmpty() || tsuid == null) return false;
+        if (!asIs && !HeaderRewriter.supports(tsuid)) return false;
+        if (!accepts(cuid, tsuid)) return false;
+        HeaderRewriter rewriter = asIs ? null : HeaderRewriter.read(dis, changeTags);
+        try {
+            if (asIs) store(iuid, dataSet);
+            else return store(rewriter, tsuid);
+        } catch (IOException e) {
+            close();
+            throw new ModuleException(DicomError.CONNECTIVITY, e);
+        }
+        return true;
+    }
+
+    /**
+     * Sends a DICOM file read from a stream, such as an archive entry, without writing it to disk.
+     * The data set is sent as it is read when possible, and decoded otherwise.
+     * @param in Supports mark, left open
+     */
+    private void storeDicom(InputStream in) throws IOException {
+        // Marked so the entry can be read again and decoded, if the target rejects the SOP Class of the changed header
+        boolean rewrite = !changeTags.isEmpty() && changeTags.isHeaderOnly();
+        if (rewrite) in.mark(HEADER_MARK_LIMIT);
+        // dis buffers on its own, so its marks leave the mark of in alone
+        try (DicomInputStream dis = new DicomInputStream(new BufferedInputStream(new CloseShieldFilterInputStream(in)))) {
+            Attributes fmi = dis.readFileMetaInformation();
+            long offset = dis.getPosition();
+            String tsuid = fmi == null ? null : fmi.getString(Tag.TransferSyntaxUID);
+            // dis inflates a deflated data set as it reads it, so it cannot be copied from dis as is
+            if (canStoreEncoded() && HeaderRewriter.supports(tsuid) && storeEncoded(dis, fmi, (out, ts) -> out.copyFrom(dis))) return;
+            if (dis.getPosition() == offset) {
+                storeDecoded(dis, fmi);
+                return;
+            }
+        }
+        // The header was read for the tag changes, so the entry is decoded from the start
+        try {
+            in.reset();
+        } catch (IOException e) {
+            close();
+            throw new ModuleException(DicomError.CONNECTIVITY, new IOException("No presentation context accepted for the changed SOP Class UID", e));
+        }
+        try (DicomInputStream dis = new DicomInputStream(new BufferedInputStream(new CloseShieldFilterInputStream(in)))) {
+            storeDecoded(dis, dis.readFileMetaInformation());
+        }
+    }
+
+    private void storeDecoded(DicomInputStream dis, Attributes fmi) throws IOException {
+        dis.setIncludeBulkData(DicomInputStream.IncludeBulkData.YES);
+        Attributes data = dis.readDataset();
+        changeTags.apply(data);
+        store(data, fmi);
+    }
+
+    /**
+     * Sends a data set whose header was rewritten, over an association that accepts its Transfer Syntax
+     * @return false if the remote server rejects the SOP Class of the rewritten header
+     */
+    public boolean store(HeaderRewriter rewriter, String tsuid) throws IOException {
+        Attributes header = rewriter.getHeader();
+        String cuid = AttribUtils.getFirstString(header, new Integer[]{Tag.AffectedSOPClassUID, Tag.MediaStorageSOPClassUID, Tag.SOPClassUID});
+        String iuid = AttribUtils.getFirstString(header, new Integer[]{Tag.AffectedSOPInstanceUID, Tag.MediaStorageSOPInstanceUID, Tag.SOPInstanceUID});
+        if (iuid == null || iuid.isEmpty()) {
+            throw new ModuleException(DicomError.MISSING_UID, new IOException("Missing SOP Instance UID"));
+        }
+        if (cuid == null || !accepts(cuid, tsuid)) return false;
+        store(iuid, rewriter);
+        return true;
+    }
+
+    /**
+     * Sends a file classified earlier, opening it once
+     */
+    public void store(String fileName, DicomFileType dft) throws IOException {
+        if (!DicomFileType.canStore(dft)) return;
+        try (IngestFile file = IngestFile.open(fileName)) {
+            store(file);
+        }
+    }
+
+    /**
+     * Sends a DICOM file or every DICOM file in an archive, reading from the handle that classified it
+     */
+    public void store(IngestFile file) throws IOException {
+        switch (file.getType()) {
+            case DICOM:
+                storeDicom(file);
+                break;
+            case GZIP:
+            case TAR:
+                try (InputStream fileInputStream = new BufferedInputStream(file.newInputStream(0), ARCHIVE_BUFFER_SIZE)) {
+                    storeArchive(fileInputStream, file.getType());
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    public void store(Attributes data, Attributes fmi) {
         String tsuid = null;
         if (fmi != null) tsuid = AttribUtils.getFirstString(fmi, new Integer[]{Tag.TransferSyntaxUID});
         if (tsuid == null) tsuid = AttribUtils.getFirstString(data, new Integer[]{Tag.TransferSyntaxUID});
         if (tsuid == null) tsuid = UID.ExplicitVRLittleEndian;
         String cuid = AttribUtils.getFirstString(data, new Integer[]{Tag.AffectedSOPClassUID, Tag.MediaStorageSOPClassUID, Tag.SOPClassUID});
-        scuOperationConfig.setTransferSyntaxUid(tsuid);
-        scuOperationConfig.setSopClassUid(cuid);
 
         String iuid = AttribUtils.getFirstString(data, new Integer[]{Tag.AffectedSOPInstanceUID, Tag.MediaStorageSOPInstanceUID, Tag.SOPInstanceUID});
         if (iuid == null || iuid.isEmpty()) {
             throw new ModuleException(DicomError.MISSING_UID, new IOException("Missing SOP Instance UID"));
         }
         try {
-            connection.start(scuOperationConfig, null);
+            open(cuid, tsuid);
             log.info("{}: C-STORE {}", connection, iuid);
-            MuleDimseRSPHandler handler = connection.execute(data, iuid);
-            if (handler == null || handler.isCanceled()) throw new ModuleException(DicomError.CANCELED, new RuntimeException("Canceled"));
-            iuidList.add(iuid);
+            if (collector == null) {
+                MuleDimseRSPHandler handler = connection.execute(data, iuid);
+                if (handler == null || handler.isCanceled()) throw new ModuleException(DicomError.CANCELED, new RuntimeException("Canceled"));
+                statuses.put(iuid, handler.getStatus());
+                iuidList.add(iuid);
+            } else {
+                invoke(new DataWriterAdapter(data), iuid);
+            }
         } catch (SSLException e) {
+            close();
             throw new ModuleException(DicomError.SSL, e);
         } catch (IOException e) {
+            close();
             throw new ModuleException(DicomError.CONNECTIVITY, e);
         } catch (GeneralSecurityException e) {
+            close();
             throw new ModuleException(DicomError.CLIENT_SECURITY, e);
-        } finally {
-            connection.stop();
         }
     }
 
-    public static void execute(ScuConnection connection, ScuOperationConfig scuOperationConfig, String fileName, DicomFileType dft, Map<String, String> changeTags, List<String> iuidList) throws IOException {
-        StoreScu storeScu = new StoreScu(connection, scuOperationConfig, changeTags, iuidList);
-        Path f = Paths.get(fileName);
-        switch (dft) {
-            case DICOM:
-                storeScu.execute(fileName);
-                break;
-            case GZIP:
-                try (InputStream fileInputStream = Files.newInputStream(f)) {
-                    String tmpFolder = Files.createTempDirectory("dicom_storescu_").toString();
-                    unGzip(tmpFolder, fileName, fileInputStream, storeScu);
-                    StoreUtils.deleteFolder(tmpFolder);
-                }
-                break;
-            case TAR:
-                try (InputStream fileInputStream = Files.newInputStream(f)) {
-                    String tmpFolder = Files.createTempDirectory("dicom_storescu_").toString();
-                    unTar(tmpFolder, fileInputStream, storeScu);
-                    StoreUtils.deleteFolder(tmpFolder);
-                }
-                break;
-            default:
-                break;
+    /**
+     * Makes sure the association can carry the SOP Class / Transfer Syntax pair
+     * @return false if the remote server rejected the pair
+     */
+    public boolean accepts(String cuid, String tsuid) {
+        try {
+            open(cuid, tsuid);
+        } catch (SSLException e) {
+            close();
+            throw new ModuleException(DicomError.SSL, e);
+        } catch (IOException e) {
+            close();
+            throw new ModuleException(DicomError.CONNECTIVITY, e);
+        } catch (GeneralSecurityException e) {
+            close();
+            throw new ModuleException(DicomError.CLIENT_SECURITY, e);
         }
+        return connection.isAccepted(cuid, tsuid);
     }
 
-    private static void unGzip(String folderName, String filename, InputStream inputStream, StoreScu storeScu) throws IOException {
-        try (GzipCompressorInputStream gzInputStream = new GzipCompressorInputStream(inputStream)) {
-            if (filename.endsWith(".tar.gz") || filename.endsWith((".tgz"))) {
-                unTar(folderName, gzInputStream, storeScu);
-            } else {
-                String randomName = UUID.randomUUID().toString();
-                Path extractedFile = Paths.get(folderName, randomName);
-                extractAndSend(folderName, extractedFile, gzInputStream, storeScu);
+    /**
+     * Sends an encoded data set as is, over an association opened by accepts
+     */
+    public void store(String iuid, DataWriter dataWriter) throws IOException {
+        log.info("{}: C-STORE {}", connection, iuid);
+        if (collector != null) {
+            invoke(dataWriter, iuid);
+            return;
+        }
+        MuleDimseRSPHandler handler = connection.execute(dataWriter, iuid);
+        if (handler == null || handler.isCanceled()) throw new ModuleException(DicomError.CANCELED, new RuntimeException("Canceled"));
+        statuses.put(iuid, handler.getStatus());
+        iuidList.add(iuid);
+    }
+
+    private void invoke(DataWriter dataWriter, String iuid) throws IOException {
+        try {
+            if (!collector.acquire(scuOperationConfig.getCancelAfter())) {
+                cancel();
+            }
+            try {
+                connection.invoke(dataWriter, iuid, collector.handler(connection.nextMessageId(), iuid));
+            } catch (IOException e) {
+                collector.failed(iuid);
+                throw e;
             }
+        } catch (InterruptedException e) {
+            Thread t = Thread.currentThread();
+            t.getUncaughtExceptionHandler().uncaughtException(t, e);
+            t.interrupt();
+            cancel();
         }
+    }
+
+    private void cancel() {
+        log.warn("{}: Canceling C-STORE with {} outstanding requests", connection, collector.getOutstanding());
+        endCollector();
+        started = false;
+        connection.abort();
+        throw new ModuleException(DicomError.CANCELED, new RuntimeException("Canceled"));
+    }
 
+    private void endCollector() {
+        maxOutstanding = Math.max(maxOutstanding, collector.getMaxOutstanding());
+        collector = null;
     }
 
-    private static void unTar(String folderName, InputStream inputStream, StoreScu storeScu) throws IOException {
-        try (TarArchiveInputStream tarInputStream = new TarArchiveInputStream(inputStream)) {
-            TarArchiveEntry entry;
-            while ((entry = tarInputStream.getNextTarEntry()) != null) {
-                if (entry.isFile()) {
-                    Path extractedFile = Paths.get(folderName, entry.getName());
-                    extractAndSend(folderName, extractedFile, tarInputStream, storeScu);
+    /**
+     * Makes sure the current association can carry the SOP Class / Transfer Syntax pair
+     */
+    private void open(String cuid, String tsuid) throws IOException, GeneralSecurityException {
+        scuOperationConfig.setTransferSyntaxUid(tsuid);
+        scuOperationConfig.setSopClassUid(cuid);
+        scuOperationConfig.addPresentationContext(cuid, tsuid);
+        if (started) {
+            // A pair that was proposed and rejected will not be accepted by a new association either
+            if (connection.isReadyForDataTransfer() && connection.isRequested(cuid, tsuid)) return;
+            log.debug("{}: Opening a new association for {} {}", connection, cuid, tsuid);
+            close();
+        }
+        started = true;
+        connection.start(scuOperationConfig, null);
+        if (outstandingRequests > 1) {
+            int window = outstandingRequests;
+            int maxOpsInvoked = connection.getMaxOpsInvoked();
+            if (maxOpsInvoked > 0) window = Math.min(window, maxOpsInvoked);
+            log.debug("{}: Sending up to {} outstanding C-STORE requests", connection, window);
+            collector = window > 1 ? new MuleStoreRSPCollector(window, iuidList, statuses) : null;
+        }
+    }
+
+    /**
+     * Waits for any outstanding responses and releases the association used by the batch
+     */
+    public void close() {
+        if (!started) return;
+        started = false;
+        if (collector != null) {
+            try {
+                if (!collector.drain(scuOperationConfig.getCancelAfter())) {
+                    log.warn("{}: Aborting with C-STORE responses outstanding", connection);
+                    connection.abort();
                 }
+            } catch (InterruptedException e) {
+                Thread t = Thread.currentThread();
+                t.getUncaughtExceptionHandler().uncaughtException(t, e);
+                t.interrupt();
+                connection.abort();
             }
+            endCollector();
         }
+        connection.stop();
     }
 
-    private static void extractAndSend(String folderName, Path extractedFile, InputStream inputStream, StoreScu storeScu) throws IOException {
-        Files.createDirectories(extractedFile.getParent());
-        try (OutputStream outputStream = Files.newOutputStream(extractedFile, StandardOpenOption.CREATE_NEW)) {
-            byte[] content = new byte[32767];
-            int i;
-            while ((i = inputStream.read(content)) != -1) {
-                outputStream.write(content, 0, i);
-            }
-            outputStream.flush();
+    public static void execute(ScuConnection connection, ScuOperationConfig scuOperationConfig, Attributes data, Attributes fmi, List<String> iuidList) {
+        StoreScu storeScu = new StoreScu(connection, scuOperationConfig, ChangeTagPlan.EMPTY, iuidList);
+        try {
+            storeScu.store(data, fmi);
+        } finally {
+            storeScu.close();
         }
-        // Send the extracted file, which could be anything
-        DicomFileType dft = DicomFileType.parse(extractedFile.toString());
-        switch (dft) {
-            case DICOM:
-                storeScu.execute(extractedFile.toString());
-                break;
+    }
+
+    public static void execute(ScuConnection connection, ScuOperationConfig scuOperationConfig, String fileName, DicomFileType dft, Map<String, String> changeTags, List<String> iuidList) throws IOException {
+        StoreScu storeScu = new StoreScu(connection, scuOperationConfig, changeTags, iuidList);
+        try {
+            storeScu.store(fileName, dft);
+        } finally {
+            storeScu.close();
+        }
+    }
+
+    /**
+     * Sends every DICOM file in an archive as it is decompressed, classifying each entry from its first bytes.
+     * Nested archives are read the same way, so nothing is extracted to disk.
+     * @param in Left open
+     */
+    private void storeArchive(InputStream in, DicomFileType type) throws IOException {
+        switch (type) {
             case GZIP:
-                try (InputStream fileInputStream = Files.newInputStream(extractedFile)) {
-                    unGzip(folderName, extractedFile.toString(), fileInputStream, storeScu);
+                // Concatenated members are read as one stream, as gunzip does
+                try (InputStream gzInputStream = new GzipCompressorInputStream(new CloseShieldFilterInputStream(in), true)) {
+                    storeEntry(gzInputStream, "");
                 }
                 break;
             case TAR:
-                try (InputStream fileInputStream = Files.newInputStream(extractedFile)) {
-                    unTar(folderName, fileInputStream, storeScu);
+                TarArchiveInputStream tarInputStream = new TarArchiveInputStream(in);
+                TarArchiveEntry entry;
+                while ((entry = tarInputStream.getNextTarEntry()) != null) {
+                    if (entry.isFile()) storeEntry(tarInputStream, entry.getName());
                 }
                 break;
             default:
-                // Quietly ignore anything else
                 break;
         }
-        Files.deleteIfExists(extractedFile);
     }
 
+    /**
+     * Sends a DICOM file or the DICOM files of an archive, read from a stream
+     * @param in Left open
+     */
+    private void storeEntry(InputStream in, String name) throws IOException {
+        BufferedInputStream entryInputStream = new BufferedInputStream(new CloseShieldFilterInputStream(in), ARCHIVE_BUFFER_SIZE);
+        DicomFileType type = DicomFileType.classify(entryInputStream, name);
+        if (type == DicomFileType.DICOM) storeDicom(entryInputStream);
+        else storeArchive(entryInputStream, type);
+        // Quietly ignore anything else
+    }
 }
@@ -8,8 +8,10 @@
 package org.mule.module.dicom.internal.operation;
 
 import org.mule.module.dicom.api.parameter.PresentationContext;
+import org.mule.module.dicom.api.parameter.StoreConcurrency;
 import org.mule.module.dicom.api.parameter.StoreSearch;
 import org.mule.module.dicom.api.parameter.Timings;
+import org.mule.module.dicom.api.parameter.TransferBuffer;
 import org.mule.module.dicom.internal.config.ScuOperationConfig;
 import org.mule.module.dicom.internal.config.ScuType;
 import org.mule.module.dicom.internal.connection.TransferConnection;
@@ -43,28 +45,36 @@ public class TransferOperations {
              @Example("#[{\"PatientID\": \"XXXXXXXX\", \"0x67810010\": \"JohnsHopkinsMedicine\", \"0x67811000\": \"${StudyDate}_${AccessionNumber}\"}]")
              Map<String, String> changeTags,
              @ParameterGroup(name=Timings.PARAMETER_GROUP)
-             Timings timings
+             Timings timings,
+             @ParameterGroup(name=StoreConcurrency.PARAMETER_GROUP)
+             StoreConcurrency storeConcurrency,
+             @ParameterGroup(name=TransferBuffer.PARAMETER_GROUP)
+             TransferBuffer transferBuffer
     ) {
-        synchronized (this) {
-            ScuOperationConfig scuGetConfig = new ScuOperationConfig(ScuType.GET);
-            scuGetConfig.setInformationModel(presentationContext.getInformationModel());
-            scuGetConfig.setRetrieveLevel(presentationContext.getRetrieveLevel());
-            scuGetConfig.setTransferSyntax(presentationContext.getTransferSyntax());
-            scuGetConfig.setSopClasses(storeSearch.getSopClasses());
-            scuGetConfig.setCancelAfter(timings.getCancelAfter());
+        ScuOperationConfig scuGetConfig = new ScuOperationConfig(ScuType.GET);
+        scuGetConfig.setInformationModel(presentationContext.getInformationModel());
+        scuGetConfig.setRetrieveLevel(presentationContext.getRetrieveLevel());
+        scuGetConfig.setTransferSyntax(presentationContext.getTransferSyntax());
+        scuGetConfig.setSopClasses(storeSearch.getSopClasses());
+        scuGetConfig.setCancelAfter(timings.getCancelAfter());
 
-            ScuOperationConfig scuStoreConfig = new ScuOperationConfig(ScuType.STORE);
-            scuStoreConfig.setCancelAfter(timings.getCancelAfter());
-            MuleTransferStore muleStore = new MuleTransferStore(connection, scuStoreConfig, changeTags);
+        ScuOperationConfig scuStoreConfig = new ScuOperationConfig(ScuType.STORE);
+        scuStoreConfig.setCancelAfter(timings.getCancelAfter());
+        MuleTransferStore muleStore = new MuleTransferStore(connection, scuStoreConfig, changeTags,
+                storeConcurrency.getAssociations(), storeConcurrency.getOutstandingRequests(), transferBuffer);
 
-            GetScu getScu = GetScu.execute(connection.getSourceConnection(), scuGetConfig, storeSearch.getSearchKeys(), muleStore);
-            if (getScu.getHasError()) {
-                throw new ModuleException(DicomError.REQUEST_ERROR, new RuntimeException(getScu.getErrorMessage()));
-            }
-            if (getScu.getPayload().isEmpty()) {
-                throw new ModuleException(DicomError.NOT_FOUND, new RuntimeException("C-GET Received 0 Files"));
-            }
-            return getScu.getPayload();
+        GetScu getScu;
+        try {
+            getScu = GetScu.execute(connection.getSourceConnection(), scuGetConfig, storeSearch.getSearchKeys(), muleStore);
+        } finally {
+            muleStore.close();
         }
+        if (getScu.getHasError()) {
+            throw new ModuleException(DicomError.REQUEST_ERROR, new RuntimeException(getScu.getErrorMessage()));
+        }
+        if (getScu.getPayload().isEmpty()) {
+            throw new ModuleException(DicomError.NOT_FOUND, new RuntimeException("C-GET Received 0 Files"));
+        }
+        return getScu.getPayload();
     }
 }
@@ -0,0 +1,175 @@
+/**
+ * Copyright (c) 2022 The Johns Hopkins University
+ * All rights reserved
+ *
+ * @author David J. Talley, Technology Innovation Center, Precision Medicine Analytics Platform, Johns Hopkins Medicine
+ *
+ */
+package org.mule.module.dicom.internal.store;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.utils.BoundedInputStream;
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.io.DicomInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Sidecar index of an indexed tar/gzip archive, where every tar entry is its own gzip member. Each line maps the
+ * instance and series of an entry to the offset and length of its member, so one instance can be read without
+ * decompressing the entries before it. The index is a tab separated text file next to the archive.
+ */
+public class ArchiveIndex {
+    public static final String EXTENSION = ".idx";
+    private static final String HEADER = "#SOPInstanceUID\tSeriesInstanceUID\tStudyInstanceUID\tEntry\tOffset\tLength";
+
+    private final List<Entry> entries = new ArrayList<>();
+    public List<Entry> getEntries() { return entries; }
+
+    public void add(Entry entry) {
+        entries.add(entry);
+    }
+
+    /**
+     * The entry of an instance, or null if the archive does not hold it
+     */
+    public Entry findInstance(String sopInstanceUid) {
+        for (Entry entry : entries) {
+            if (sopInstanceUid.equals(entry.sopInstanceUid)) return entry;
+        }
+        return null;
+    }
+
+    /**
+     * The entries of a series, in archive order
+     */
+    public List<Entry> findSeries(String seriesInstanceUid) {
+        List<Entry> series = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (seriesInstanceUid.equals(entry.seriesInstanceUid)) series.add(entry);
+        }
+        return series;
+    }
+
+    /**
+     * The index file of an archive
+     */
+    public static Path indexOf(Path archive) {
+        return Paths.get(archive.toString() + EXTENSION);
+    }
+
+    public void write(Path indexFile) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(indexFile, StandardCharsets.US_ASCII)) {
+            writer.write(HEADER);
+            writer.newLine();
+            for (Entry entry : entries) {
+                writer.write(entry.toLine());
+                writer.newLine();
+            }
+        }
+    }
+
+    public static ArchiveIndex read(Path indexFile) throws IOException {
+        ArchiveIndex index = new ArchiveIndex();
+        try (BufferedReader reader = Files.newBufferedReader(indexFile, StandardCharsets.US_ASCII)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                index.add(Entry.parse(line));
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Reads the UIDs of an instance from its header, stopping before the pixel data
+     */
+    public static Attributes readKeys(InputStream dicom) throws IOException {
+        try (DicomInputStream dis = new DicomInputStream(dicom)) {
+            dis.setIncludeBulkData(DicomInputStream.IncludeBulkData.NO);
+            return dis.readDataset(-1, Tag.PixelData);
+        }
+    }
+
+    /**
+     * Decompresses only the member of an entry. The stream returned reads the content of the entry.
+     * @param archive Left open when the stream is closed
+     */
+    public static InputStream openEntry(FileChannel archive, Entry entry) throws IOException {
+        archive.position(entry.offset);
+        InputStream member = new BoundedInputStream(Channels.newInputStream(archive), entry.length) {
+            @Override
+            public void close() {
+                // The archive belongs to the caller
+            }
+        };
+        TarArchiveInputStream tar = new TarArchiveInputStream(new GZIPInputStream(new BufferedInputStream(member)));
+        TarArchiveEntry tarEntry = tar.getNextTarEntry();
+        if (tarEntry == null || !tarEntry.getName().equals(entry.name)) {
+            throw new IOException("Archive does not match its index at offset " + entry.offset);
+        }
+        return tar;
+    }
+
+    public static class Entry {
+        private final String sopInstanceUid;
+        private final String seriesInstanceUid;
+        private final String studyInstanceUid;
+        private final String name;
+        private final long offset;
+        private final long length;
+
+        public Entry(String sopInstanceUid, String seriesInstanceUid, String studyInstanceUid, String name, long offset, long length) {
+            this.sopInstanceUid = sopInstanceUid;
+            this.seriesInstanceUid = seriesInstanceUid;
+            this.studyInstanceUid = studyInstanceUid;
+            this.name = name;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        /**
+         * @param keys Header of the instance, see readKeys
+         */
+        public Entry(Attributes keys, String name, long offset, long length) {
+            this(keys.getString(Tag.SOPInstanceUID, ""), keys.getString(Tag.SeriesInstanceUID, ""),
+                    keys.getString(Tag.StudyInstanceUID, ""), name, offset, length);
+        }
+
+        public String getSopInstanceUid() { return sopInstanceUid; }
+        public String getSeriesInstanceUid() { return seriesInstanceUid; }
+        public String getStudyInstanceUid() { return studyInstanceUid; }
+        public String getName() { return name; }
+        public long getOffset() { return offset; }
+        public long getLength() { return length; }
+
+        private String toLine() {
+            return sopInstanceUid + '\t' + seriesInstanceUid + '\t' + studyInstanceUid + '\t' + name + '\t' + offset + '\t' + length;
+        }
+
+        private static Entry parse(String line) throws IOException {
+            String[] fields = line.split("\t", -1);
+            if (fields.length != 6) throw new IOException("Invalid archive index line: " + line);
+            try {
+                return new Entry(fields[0], fields[1], fields[2], fields[3], Long.parseLong(fields[4]), Long.parseLong(fields[5]));
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid archive index line: " + line, e);
+            }
+        }
+    }
+}
@@ -9,74 +9,205 @@ package org.mule.module.dicom.internal.store;
 
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
-import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.apache.commons.compress.archivers.tar.TarConstants;
 import org.apache.commons.compress.utils.IOUtils;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.dcm4che3.data.Attributes;
+import org.mule.module.dicom.internal.util.GzipMembersOutputStream;
+import org.mule.module.dicom.internal.util.ParallelGzipOutputStream;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.*;
+import java.util.Date;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
 import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.TimeUnit;
 
-public class CompressAsync implements Runnable {
-    private static final Logger log = LoggerFactory.getLogger(CompressAsync.class);
+/**
+ * Adds received files to a tar/gzip on its own thread. The thread blocks until a file is handed over, and
+ * stops at the end marker added by finish. Files waiting to be compressed are limited by their total size:
+ * add blocks while the limit is reached, holding back the association until the compression catches up.
+ * A file is either spooled to disk and deleted once archived, or handed over in memory and never written
+ * outside the archive. When indexed, each tar entry is written as its own gzip member and an ArchiveIndex
+ * is written next to the archive once it is complete.
+ */
+public class CompressAsync implements Callable<Path> {
+    private static final Entry END = new Entry(null, null, null, 0);
 
-    private final BlockingQueue<String> buffer;
+    private final BlockingQueue<Entry> buffer = new LinkedBlockingQueue<>();
     private final Path compressedFile;
-    private volatile boolean finished = false;
-    private volatile boolean running;
-    public boolean isRunning() { return running; }
-
-    private Exception lastException = null;
-    public Exception getLastException() { return lastException; }
+    private final long maxPendingBytes;
+    private final int level;
+    private final int threads;
+    private final boolean indexed;
+    private final Object pendingLock = new Object();
+    private long pendingBytes = 0;
+    private boolean done = false;
 
-    public CompressAsync(String compressedFilename) {
-        this.buffer = new LinkedBlockingQueue<>(10000);
+    /**
+     * @param maxPendingBytes Total size of the files waiting to be compressed before add blocks. A single larger file is always accepted.
+     * @param level Gzip level
+     * @param threads Threads compressing blocks of the tar stream
+     * @param indexed Compress each entry separately and write an ArchiveIndex
+     */
+    public CompressAsync(String compressedFilename, long maxPendingBytes, int level, int threads, boolean indexed) {
         this.compressedFile = Paths.get(compressedFilename);
+        this.maxPendingBytes = maxPendingBytes;
+        this.level = level;
+        this.threads = threads;
+        this.indexed = indexed;
     }
 
-    public void add(String filename) {
-        buffer.add(filename);
+    /**
+     * The index file written with the archive, or null if not indexed
+     */
+    public Path getIndexFile() {
+        return indexed ? ArchiveIndex.indexOf(compressedFile) : null;
     }
 
-    public void setFinished() {	finished = true; }
+    /**
+     * Hands a spooled file over for compression, waiting while the files already waiting reach the size limit
+     * @throws IOException if the compression has stopped
+     */
+    public void add(String filename) throws IOException {
+        Path file = Paths.get(filename);
+        enqueue(new Entry(file.getFileName().toString(), file, null, Files.size(file)));
+    }
+
+    /**
+     * Hands the content of a file over for compression, waiting while the files already waiting reach the size limit
+     * @param content The content is not copied and must not change afterwards
+     * @throws IOException if the compression has stopped
+     */
+    public void add(String entryName, byte[] content, int length) throws IOException {
+        enqueue(new Entry(entryName, null, content, length));
+    }
+
+    private void enqueue(Entry entry) throws IOException {
+        synchronized (pendingLock) {
+            try {
+                while (!done && pendingBytes > 0 && pendingBytes + entry.size > maxPendingBytes) {
+                    pendingLock.wait();
+                }
+            } catch (InterruptedException e) {
+                Thread t = Thread.currentThread();
+                t.getUncaughtExceptionHandler().uncaughtException(t, e);
+                t.interrupt();
+                throw new IOException("Interrupted waiting for compression", e);
+            }
+            if (done) throw new IOException("Compression of " + compressedFile + " has stopped");
+            pendingBytes += entry.size;
+        }
+        buffer.add(entry);
+    }
+
+    /**
+     * Marks the end of the files. The compressed file is complete when the task returns.
+     */
+    public void finish() {
+        buffer.add(END);
+    }
 
     @Override
-    public void run() {
-        running = true;
+    public Path call() throws IOException, InterruptedException {
+        try {
+            if (indexed) compressIndexed();
+            else compress();
+        } finally {
+            synchronized (pendingLock) {
+                done = true;
+                pendingLock.notifyAll();
+            }
+        }
+        return compressedFile;
+    }
+
+    private void compress() throws IOException, InterruptedException {
         try (OutputStream fOut = Files.newOutputStream(compressedFile, StandardOpenOption.CREATE_NEW)) {
-            GzipCompressorOutputStream gzOut = new GzipCompressorOutputStream(fOut);
+            ParallelGzipOutputStream gzOut = new ParallelGzipOutputStream(fOut, level, threads);
             try (TarArchiveOutputStream tOut = new TarArchiveOutputStream(gzOut)) {
-                while (!(finished && buffer.isEmpty())) {
-                    String filename = buffer.poll(10, TimeUnit.MICROSECONDS);
-                    if (filename != null) {
-                        Path f = Paths.get(filename);
-                        TarArchiveEntry entry = new TarArchiveEntry(f.toFile(), f.getFileName().toString());
-                        tOut.putArchiveEntry(entry);
-                        try (InputStream fIn = Files.newInputStream(f, StandardOpenOption.DELETE_ON_CLOSE)) {
-                            long sizeWritten = IOUtils.copy(fIn, tOut);
-                            fOut.flush();
-                            entry.setSize(sizeWritten);
-                            tOut.closeArchiveEntry();
-                        }
-                    }
+                Entry e;
+                while ((e = buffer.take()) != END) {
+                    archive(tOut, e);
+                    release(e.size);
                 }
             }
-        } catch (InterruptedException e) {
-            lastException = e;
-            Thread t = Thread.currentThread();
-            t.getUncaughtExceptionHandler().uncaughtException(t, e);
-            t.interrupt();
-        } catch (IOException e) {
-            lastException = e;
-            log.error(e.toString(), e);
-        } finally {
-            finished = true;
-            running = false;
+        }
+    }
+
+    private void compressIndexed() throws IOException, InterruptedException {
+        ArchiveIndex index = new ArchiveIndex();
+        try (OutputStream fOut = new BufferedOutputStream(Files.newOutputStream(compressedFile, StandardOpenOption.CREATE_NEW))) {
+            GzipMembersOutputStream gzOut = new GzipMembersOutputStream(fOut, level, threads);
+            // Records are written through as they fill, so every entry is complete when it is closed
+            try (TarArchiveOutputStream tOut = new TarArchiveOutputStream(gzOut, TarConstants.DEFAULT_RCDSIZE)) {
+                Entry e;
+                while ((e = buffer.take()) != END) {
+                    Attributes keys = readKeys(e);
+                    long offset = gzOut.getPosition();
+                    archive(tOut, e);
+                    gzOut.endMember();
+                    index.add(new ArchiveIndex.Entry(keys, e.name, offset, gzOut.getPosition() - offset));
+                    release(e.size);
+                }
+            }
+        }
+        index.write(getIndexFile());
+    }
+
+    private static Attributes readKeys(Entry e) {
+        try (InputStream in = e.file != null ? Files.newInputStream(e.file) : new ByteArrayInputStream(e.content, 0, (int) e.size)) {
+            return ArchiveIndex.readKeys(in);
+        } catch (IOException ignore) {
+            // Still archived, but can only be found by its entry name
+            return new Attributes();
+        }
+    }
+
+    private static void archive(TarArchiveOutputStream tOut, Entry e) throws IOException {
+        if (e.file != null) archive(tOut, e.file, e.name);
+        else archive(tOut, e.content, e.name, (int) e.size);
+    }
+
+    private static void archive(TarArchiveOutputStream tOut, Path f, String name) throws IOException {
+        TarArchiveEntry entry = new TarArchiveEntry(f.toFile(), name);
+        tOut.putArchiveEntry(entry);
+        try (InputStream fIn = Files.newInputStream(f, StandardOpenOption.DELETE_ON_CLOSE)) {
+            IOUtils.copy(fIn, tOut);
+            tOut.closeArchiveEntry();
+        }
+    }
+
+    private static void archive(TarArchiveOutputStream tOut, byte[] content, String name, int length) throws IOException {
+        TarArchiveEntry entry = new TarArchiveEntry(name);
+        entry.setSize(length);
+        entry.setModTime(new Date());
+        tOut.putArchiveEntry(entry);
+        tOut.write(content, 0, length);
+        tOut.closeArchiveEntry();
+    }
+
+    private void release(long size) {
+        synchronized (pendingLock) {
+            pendingBytes -= size;
+            pendingLock.notifyAll();
+        }
+    }
+
+    private static final class Entry {
+        private final String name;
+        private final Path file;
+        private final byte[] content;
+        private final long size;
+
+        private Entry(String name, Path file, byte[] content, long size) {
+            this.name = name;
+            this.file = file;
+            this.content = content;
+            this.size = size;
         }
     }
 }
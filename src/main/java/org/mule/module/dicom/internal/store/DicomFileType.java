@@ -9,16 +9,21 @@ package org.mule.module.dicom.internal.store;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
-import java.util.Arrays;
+import java.nio.ByteBuffer;
 import java.util.Locale;
 
 public enum DicomFileType {
     DIRECTORY, DICOM, DICOMDIR, GZIP, TAR, UNKNOWN, CANNOT_READ;
 
+    /**
+     * Bytes at the start of a file needed to classify it, up to the end of the tar magic and version
+     */
+    public static final int PREFIX_LENGTH = 265;
+    private static final byte[] SIG_GZ = new byte[]{0x1f, (byte)0x8b, 0x08}; // offset 0
+    private static final byte[] SIG_DCM = new byte[]{0x44, 0x49, 0x43, 0x4d}; // offset 128
+    private static final byte[] SIG_TAR1 = new byte[]{0x75, 0x73, 0x74, 0x61, 0x72, 0x00, 0x30, 0x30}; // offset 257
+    private static final byte[] SIG_TAR2 = new byte[]{0x75, 0x73, 0x74, 0x61, 0x72, 0x20, 0x20, 0x00}; // offset 257
+
     public static boolean canStore(DicomFileType value) {
         switch(value) {
             case DICOM:
@@ -35,39 +40,44 @@ public enum DicomFileType {
      * @param filename Can be a filename or a directory
      */
     public static DicomFileType parse(String filename) {
-        final byte[] sigGz = new byte[]{0x1f, (byte)0x8b, 0x08, 0x00, 0x00, 0x00, 0x00, 0x00}; // offset 0
-        final byte[] sigDcm = new byte[]{0x44, 0x49, 0x43, 0x4d, 0x00, 0x00, 0x00, 0x00}; // offset 128
-        final byte[] sigTar1 = new byte[]{0x75, 0x73, 0x74, 0x61, 0x72, 0x00, 0x30, 0x30}; // offset 257
-        final byte[] sigTar2 = new byte[]{0x75, 0x73, 0x74, 0x61, 0x72, 0x20, 0x20, 0x00}; // offset 257
+        try (IngestFile file = IngestFile.open(filename)) {
+            return file.getType();
+        }
+    }
 
-        Path file = Paths.get(filename);
-        if (!Files.exists(file)) return UNKNOWN;
-        if (Files.isDirectory(file)) return DIRECTORY;
-        try (InputStream inputStream = Files.newInputStream(file, StandardOpenOption.READ)) {
-            byte[] buffer = new byte[8];
-            int size = inputStream.read(buffer, 0, 3);
-            if (size < 3) return UNKNOWN;
-            if (Arrays.equals(buffer, sigGz)) {
-                return GZIP;
-            }
-            long skipped = inputStream.skip(125);
-            if (skipped < 125) return UNKNOWN;
-            size = inputStream.read(buffer, 0, 4);
-            if (size < 4) return UNKNOWN;
-            if (Arrays.equals(buffer, sigDcm)) {
-                if (filename.toUpperCase(Locale.ROOT).endsWith("DICOMDIR")) return DICOMDIR;
-                return DICOM;
-            }
-            skipped = inputStream.skip(125);
-            if (skipped < 125) return UNKNOWN;
-            size = inputStream.read(buffer, 0, 8);
-            if (size < 8) return UNKNOWN;
-            if (Arrays.equals(buffer, sigTar1) || Arrays.equals(buffer, sigTar2)) {
-                return TAR;
-            }
-        } catch (IOException ignore) {
-            return CANNOT_READ;
+    /**
+     * Determines the kind of file from the first bytes of its content
+     * @param prefix Up to PREFIX_LENGTH bytes from the start of the file, between position 0 and the limit
+     */
+    public static DicomFileType classify(ByteBuffer prefix, String filename) {
+        if (matches(prefix, 0, SIG_GZ)) return GZIP;
+        if (matches(prefix, 128, SIG_DCM)) {
+            if (filename.toUpperCase(Locale.ROOT).endsWith("DICOMDIR")) return DICOMDIR;
+            return DICOM;
         }
+        if (matches(prefix, 257, SIG_TAR1) || matches(prefix, 257, SIG_TAR2)) return TAR;
         return UNKNOWN;
     }
+
+    /**
+     * Determines the kind of content at the start of a stream, such as an archive entry, leaving the stream where it was
+     * @param in Must support mark
+     */
+    public static DicomFileType classify(InputStream in, String filename) throws IOException {
+        byte[] prefix = new byte[PREFIX_LENGTH];
+        int length = 0;
+        int count;
+        in.mark(PREFIX_LENGTH);
+        while (length < PREFIX_LENGTH && (count = in.read(prefix, length, PREFIX_LENGTH - length)) > 0) length += count;
+        in.reset();
+        return classify(ByteBuffer.wrap(prefix, 0, length), filename);
+    }
+
+    private static boolean matches(ByteBuffer prefix, int offset, byte[] signature) {
+        if (prefix.limit() < offset + signature.length) return false;
+        for (int i = 0; i < signature.length; i++) {
+            if (prefix.get(offset + i) != signature[i]) return false;
+        }
+        return true;
+    }
 }
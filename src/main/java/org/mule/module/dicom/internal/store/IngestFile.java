@@ -0,0 +1,114 @@
+/**
+ * Copyright (c) 2022 The Johns Hopkins University
+ * All rights reserved
+ *
+ * @author David J. Talley, Technology Innovation Center, Precision Medicine Analytics Platform, Johns Hopkins Medicine
+ *
+ */
+package org.mule.module.dicom.internal.store;
+
+import org.dcm4che3.io.DicomInputStream;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * A file opened once for ingest. It is classified from one read of its first bytes, and the same channel
+ * is then read from the start again by the DICOM parser or the archive reader.
+ */
+public class IngestFile implements Closeable {
+    private final Path path;
+    private final DicomFileType type;
+    private final FileChannel channel;
+
+    private IngestFile(Path path, DicomFileType type, FileChannel channel) {
+        this.path = path;
+        this.type = type;
+        this.channel = channel;
+    }
+
+    public Path getPath() { return path; }
+    public DicomFileType getType() { return type; }
+    /**
+     * The open channel, or null for directories and files that cannot be read
+     */
+    public FileChannel getChannel() { return channel; }
+
+    /**
+     * Opens and classifies a file. Never throws: a missing file is UNKNOWN and an unreadable one CANNOT_READ.
+     * @param filename Can be a filename or a directory
+     */
+    public static IngestFile open(String filename) {
+        Path path = Paths.get(filename);
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return new IngestFile(path, DicomFileType.UNKNOWN, null);
+        } catch (IOException e) {
+            return new IngestFile(path, DicomFileType.CANNOT_READ, null);
+        }
+        if (attributes.isDirectory()) return new IngestFile(path, DicomFileType.DIRECTORY, null);
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+            ByteBuffer prefix = ByteBuffer.allocate(DicomFileType.PREFIX_LENGTH);
+            while (prefix.hasRemaining() && channel.read(prefix, prefix.position()) > 0) {
+                // Read until the prefix is full or the file ends
+            }
+            prefix.flip();
+            return new IngestFile(path, DicomFileType.classify(prefix, filename), channel);
+        } catch (IOException e) {
+            closeQuietly(channel);
+            return new IngestFile(path, DicomFileType.CANNOT_READ, null);
+        }
+    }
+
+    /**
+     * Reads the file from the given position. Closing the stream leaves the file open.
+     */
+    public InputStream newInputStream(long position) throws IOException {
+        if (channel == null) throw new IOException("Cannot read " + path);
+        channel.position(position);
+        return new FilterInputStream(Channels.newInputStream(channel)) {
+            @Override
+            public void close() {
+                // The channel is closed with the IngestFile
+            }
+        };
+    }
+
+    /**
+     * Parses the file from the start. Bulk data is referenced by the URI of the file, as DicomInputStream(File) does.
+     */
+    public DicomInputStream newDicomInputStream() throws IOException {
+        DicomInputStream dis = new DicomInputStream(newInputStream(0));
+        dis.setURI(path.toUri().toString());
+        return dis;
+    }
+
+    @Override
+    public void close() {
+        closeQuietly(channel);
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException ignore) {
+            // Nothing left to read
+        }
+    }
+}
@@ -43,7 +43,7 @@ public class MuleCStoreSCP extends BasicCStoreSCP {
                 status = Status.Success;
                 log.error("{}: MISSING STORAGE", as);
             } else {
-                store.process(as, pc, data);
+                store.process(as, pc, rq, data);
                 status = Status.Success;
                 log.info("{}: M-WRITE to {}", as, store.getCurrentFileName());
             }
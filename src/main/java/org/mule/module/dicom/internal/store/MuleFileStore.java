@@ -9,7 +9,10 @@ package org.mule.module.dicom.internal.store;
 
 import org.dcm4che3.net.Association;
 import org.dcm4che3.net.pdu.PresentationContext;
+import org.mule.module.dicom.api.parameter.ArchiveFormat;
+import org.mule.module.dicom.api.parameter.Compression;
 import org.mule.module.dicom.internal.notification.DownloadNotificationAction;
+import org.mule.module.dicom.internal.util.SpillOutputStream;
 import org.mule.module.dicom.internal.util.StoreUtils;
 import org.dcm4che3.data.Attributes;
 import org.dcm4che3.net.PDVInputStream;
@@ -25,11 +28,14 @@ import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Future;
 
 public class MuleFileStore implements MuleStore {
+    // Received files waiting to be compressed before the association is held back
+    private static final long MAX_PENDING_BYTES = 256L * 1024 * 1024;
     private final String outputFilePath;
     private final NotificationEmitter notificationEmitter;
     private final List<String> fileList;
@@ -38,13 +44,14 @@ public class MuleFileStore implements MuleStore {
     private final boolean compressFiles;
     private final String compressFilename;
     private final CompressAsync compress;
-    private final ExecutorService executor;
+    private final Future<Path> compressed;
+    private final long archiveBufferBytes;
 
     private String currentFileName;
     @Override
     public String getCurrentFileName() { return currentFileName; }
 
-    public MuleFileStore(String outputFilePath, NotificationEmitter notificationEmitter, boolean compressFiles) throws IOException {
+    public MuleFileStore(String outputFilePath, NotificationEmitter notificationEmitter, boolean compressFiles, Compression compression) throws IOException {
         String guid = UUID.randomUUID().toString();
         this.outputFilePath = Paths.get(outputFilePath, guid).toString();
         this.notificationEmitter = notificationEmitter;
@@ -53,44 +60,52 @@ public class MuleFileStore implements MuleStore {
         Files.createDirectories(Paths.get(this.outputFilePath));
         if (compressFiles) {
             compressFilename = Paths.get(outputFilePath, guid + ".tar.gz").toString();
-            compress = new CompressAsync(compressFilename);
-            executor = Executors.newFixedThreadPool(1);
-            executor.execute(compress);
-
+            int threads = compression.getCompressionThreads();
+            if (threads <= 0) threads = Runtime.getRuntime().availableProcessors();
+            boolean indexed = ArchiveFormat.INDEXED_TAR_GZIP.equals(compression.getArchiveFormat());
+            compress = new CompressAsync(compressFilename, MAX_PENDING_BYTES, compression.getCompressionLevel(), threads, indexed);
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            compressed = executor.submit(compress);
+            executor.shutdown();
+            archiveBufferBytes = compression.getArchiveBufferSize() * 1024L * 1024L;
         } else {
             compressFilename = null;
             compress = null;
-            executor = null;
+            compressed = null;
+            archiveBufferBytes = 0;
         }
     }
 
     @Override
     public void waitForFinish() throws IOException {
         if (!compressFiles) return;
-        compress.setFinished();
-        boolean isTerm = false;
-        while (compress.isRunning() && !isTerm) {
-            try {
-                isTerm = executor.awaitTermination(100, TimeUnit.MILLISECONDS);
-            } catch (InterruptedException ignore) {
-                compress.setFinished();
-                Thread t = Thread.currentThread();
-                t.interrupt();
-            }
-        }
-        if (!isTerm) executor.shutdown();
-        if (compress.getLastException() != null) {
-            Exception e = compress.getLastException();
-            try {
-                Files.deleteIfExists(Paths.get(this.outputFilePath));
-            } catch (IOException ignore) {
-                // Ignore this exception
-            }
+        compress.finish();
+        try {
+            compressed.get();
+        } catch (InterruptedException e) {
+            compressed.cancel(true);
+            deleteOutputFolder();
+            Thread t = Thread.currentThread();
+            t.getUncaughtExceptionHandler().uncaughtException(t, e);
+            t.interrupt();
             throw new IOException(e.getMessage(), e);
-        } else {
-            fileList.clear();
-            fileList.add(compressFilename);
+        } catch (ExecutionException e) {
+            deleteOutputFolder();
+            Throwable cause = e.getCause();
+            throw new IOException(cause.getMessage(), cause);
+        }
+        fileList.clear();
+        fileList.add(compressFilename);
+        Path indexFile = compress.getIndexFile();
+        if (indexFile != null) fileList.add(indexFile.toString());
+        Files.deleteIfExists(Paths.get(this.outputFilePath));
+    }
+
+    private void deleteOutputFolder() {
+        try {
             Files.deleteIfExists(Paths.get(this.outputFilePath));
+        } catch (IOException ignore) {
+            // Ignore this exception
         }
     }
 
@@ -108,15 +123,28 @@ public class MuleFileStore implements MuleStore {
         String aet = as.getRemoteAET();
         Attributes fmi = StoreUtils.createFileMetaInformation(null, null, tsuid, icuid, ivn, aet);
 
-        // Save to the file
         String guid = UUID.randomUUID().toString();
         Path file = Paths.get(outputFilePath, guid + ".dcm");
-        currentFileName = file.toString();
+        String filename = file.toString();
+        currentFileName = filename;
+        if (compressFiles && archiveBufferBytes > 0) {
+            // Stream into the archive, spooling only instances too large to hold until their size is known
+            SpillOutputStream output = new SpillOutputStream(file, archiveBufferBytes);
+            try {
+                StoreUtils.writeTo(output, payload, fmi);
+            } finally {
+                output.close();
+            }
+            fileList.add(filename);
+            if (output.isSpilled()) compress.add(filename);
+            else compress.add(file.getFileName().toString(), output.getData(), output.getLength());
+            return;
+        }
+        // Save to the file
         try (OutputStream output = Files.newOutputStream(file, StandardOpenOption.CREATE)) {
             StoreUtils.writeTo(output, payload, fmi);
         }
-        fileList.add(file.toString());
-        String filename = file.toString();
+        fileList.add(filename);
         if (compressFiles) {
             compress.add(filename);
         } else if (notificationEmitter != null)  {
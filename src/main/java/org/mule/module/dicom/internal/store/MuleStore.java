@@ -10,6 +10,7 @@ package org.mule.module.dicom.internal.store;
 import java.io.IOException;
 import java.util.List;
 
+import org.dcm4che3.data.Attributes;
 import org.dcm4che3.net.Association;
 import org.dcm4che3.net.PDVInputStream;
 import org.dcm4che3.net.pdu.PresentationContext;
@@ -20,4 +21,12 @@ public interface MuleStore {
     void waitForFinish() throws IOException;
     List<String> getFileList();
     void process(Association as, PresentationContext pc, PDVInputStream payload) throws IOException;
+
+    /**
+     * Receives an instance along with its C-STORE request, whose Affected SOP Class and Instance UIDs
+     * are available without reading the payload
+     */
+    default void process(Association as, PresentationContext pc, Attributes rq, PDVInputStream payload) throws IOException {
+        process(as, pc, payload);
+    }
 }
@@ -9,41 +9,103 @@ package org.mule.module.dicom.internal.store;
 
 import org.dcm4che3.data.Attributes;
 import org.dcm4che3.data.Tag;
+import org.dcm4che3.io.DicomEncodingOptions;
+import org.dcm4che3.io.DicomInputStream;
 import org.dcm4che3.net.Association;
+import org.dcm4che3.net.InputStreamDataWriter;
 import org.dcm4che3.net.PDVInputStream;
 import org.dcm4che3.net.pdu.PresentationContext;
+import org.mule.module.dicom.api.parameter.TransferBuffer;
 import org.mule.module.dicom.internal.config.ScuOperationConfig;
+import org.mule.module.dicom.internal.connection.ScuConnection;
 import org.mule.module.dicom.internal.connection.TransferConnection;
-import org.mule.module.dicom.internal.operation.TransferScu;
+import org.mule.module.dicom.internal.operation.StoreScu;
 import org.mule.module.dicom.internal.util.AttribUtils;
+import org.mule.module.dicom.internal.util.ChangeTagPlan;
+import org.mule.module.dicom.internal.util.HeaderRewriter;
+import org.mule.module.dicom.internal.util.StoreUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Sends each instance received by C-GET on to the target. Decoded instances wait in memory for one of the
+ * long-lived target associations. When the count or byte budget of the buffer is used up, instances are
+ * written to the spool folder, or the C-GET waits so the source is read no faster than the target accepts.
+ */
 public class MuleTransferStore implements MuleStore {
+    private static final Logger log = LoggerFactory.getLogger(MuleTransferStore.class);
+    private static final Instance END = new Instance(null, null, 0);
     private final TransferConnection connection;
     private final ScuOperationConfig scuOperationConfig;
-    private final Map<String, String> changeTags;
+    private final ChangeTagPlan changeTags;
     private final List<String> iuidList;
+    private final int associations;
+    private final int outstandingRequests;
+    private final int queueSize;
+    private final long maxBufferBytes;
+    private final String spoolFolder;
+    private final BlockingQueue<Instance> queue = new LinkedBlockingQueue<>();
+    private final Object bufferLock = new Object();
+    private int bufferCount = 0;
+    private long bufferBytes = 0;
     private final ExecutorService executorService;
-    private final List<Future<String>> executorResults;
+    private final List<Future<?>> workers;
+    private final AtomicReference<Exception> failure = new AtomicReference<>();
+    private StoreScu passThroughScu = null;
     private String currentFileName = "";
     @Override
     public String getCurrentFileName() { return currentFileName; }
 
-    public MuleTransferStore(TransferConnection connection, ScuOperationConfig scuOperationConfig, Map<String, String> changeTags) {
+    /**
+     * An instance waiting to be sent, either decoded in memory or spooled to a file
+     */
+    private static final class Instance {
+        private final Attributes data;
+        private final String fileName;
+        private final long size;
+
+        private Instance(Attributes data, String fileName, long size) {
+            this.data = data;
+            this.fileName = fileName;
+            this.size = size;
+        }
+    }
+
+    /**
+     * @param associations number of target associations sending decoded instances
+     * @param outstandingRequests C-STORE requests each target association sends without waiting for responses
+     */
+    public MuleTransferStore(TransferConnection connection, ScuOperationConfig scuOperationConfig, Map<String, String> changeTags,
+                             int associations, int outstandingRequests, TransferBuffer transferBuffer) {
         this.connection = connection;
         this.scuOperationConfig = scuOperationConfig;
-        this.changeTags = changeTags;
-        iuidList = new ArrayList<>();
-        executorResults = new ArrayList<>();
-        executorService = Executors.newFixedThreadPool(2);
+        this.changeTags = ChangeTagPlan.compile(changeTags);
+        this.associations = Math.max(associations, 1);
+        this.outstandingRequests = outstandingRequests;
+        queueSize = Math.max(transferBuffer.getQueueSize(), 1);
+        maxBufferBytes = transferBuffer.getMaxBufferSize() * 1024L * 1024L;
+        String folder = transferBuffer.getSpoolFolder();
+        spoolFolder = (folder == null || folder.isEmpty()) ? null : folder;
+        iuidList = Collections.synchronizedList(new ArrayList<>());
+        workers = new ArrayList<>();
+        executorService = Executors.newFixedThreadPool(this.associations);
     }
 
     @Override
@@ -53,23 +115,51 @@ public class MuleTransferStore implements MuleStore {
 
     @Override
     public void waitForFinish() throws IOException {
+        closePassThrough();
         try {
-            for (Future<String> result : executorResults) {
-                String iuid = result.get();
-                iuidList.add(iuid);
+            for (int i = 0; i < workers.size(); i++) {
+                queue.put(END);
             }
-            executorService.shutdown();
-            if (!executorService.awaitTermination(800, TimeUnit.MILLISECONDS)) {
-                executorService.shutdownNow();
+            for (Future<?> worker : workers) {
+                worker.get();
             }
         } catch (InterruptedException e) {
-            executorService.shutdownNow();
             Thread t = Thread.currentThread();
             t.getUncaughtExceptionHandler().uncaughtException(t, e);
             t.interrupt();
-        } catch (Exception e) {
-            throw new IOException(e);
+        } catch (ExecutionException e) {
+            failure.compareAndSet(null, e);
+        } finally {
+            workers.clear();
+            executorService.shutdown();
         }
+        Exception e = failure.get();
+        if (e != null) throw new IOException(e);
+    }
+
+    /**
+     * Stops sending, releasing the target associations. Used when the C-GET fails before waitForFinish.
+     */
+    public void close() {
+        closePassThrough();
+        if (!workers.isEmpty()) {
+            failure.compareAndSet(null, new IOException("Transfer closed"));
+            List<Instance> pending = new ArrayList<>();
+            queue.drainTo(pending);
+            for (Instance instance : pending) {
+                release(instance);
+            }
+            for (int i = 0; i < workers.size(); i++) {
+                queue.offer(END);
+            }
+            workers.clear();
+        }
+        executorService.shutdown();
+    }
+
+    private void closePassThrough() {
+        if (passThroughScu != null) passThroughScu.close();
+        passThroughScu = null;
     }
 
     @Override
@@ -77,15 +167,178 @@ public class MuleTransferStore implements MuleStore {
         return iuidList;
     }
 
+    @Override
+    public void process(Association as, PresentationContext pc, Attributes rq, PDVInputStream payload) throws IOException {
+        String tsuid = pc.getTransferSyntax();
+        String cuid = rq.getString(Tag.AffectedSOPClassUID);
+        String iuid = rq.getString(Tag.AffectedSOPInstanceUID);
+        boolean asIs = changeTags.isEmpty();
+        boolean headerOnly = !asIs && changeTags.isHeaderOnly() && HeaderRewriter.supports(tsuid);
+        if ((asIs || headerOnly) && cuid != null && iuid != null) {
+            if (passThroughScu == null) {
+                // One more target connection beyond the ones used by the workers
+                ScuConnection passThroughConnection = connection.getTargetConnections(associations + 1).get(associations);
+                passThroughScu = new StoreScu(passThroughConnection, scuOperationConfig.copy(), ChangeTagPlan.EMPTY, iuidList);
+                // The payload is written out before store returns, so requests can be pipelined like the workers
+                passThroughScu.setOutstandingRequests(outstandingRequests);
+            }
+            if (passThroughScu.accepts(cuid, tsuid)) {
+                if (asIs) {
+                    // Nothing changes, so the encoded data set goes to the target without being parsed
+                    currentFileName = iuid;
+                    passThroughScu.store(iuid, new InputStreamDataWriter(payload));
+                } else {
+                    // Only the header changes, the pixel data is copied from the source as it arrives
+                    HeaderRewriter rewriter = HeaderRewriter.read(new DicomInputStream(payload, tsuid), changeTags);
+                    currentFileName = AttribUtils.getFirstString(rewriter.getHeader(), new Integer[]{Tag.SOPInstanceUID});
+                    if (!passThroughScu.store(rewriter, tsuid)) {
+                        throw new IOException("Target rejected the SOP Class of " + currentFileName);
+                    }
+                }
+                return;
+            }
+        }
+        receive(as, pc, cuid, iuid, payload);
+    }
+
     @Override
     public void process(Association as, PresentationContext pc, PDVInputStream payload) throws IOException {
+        receive(as, pc, null, null, payload);
+    }
+
+    /**
+     * @param cuid SOP Class UID of the C-STORE request, written to the File Meta Information of a spooled instance
+     * @param iuid SOP Instance UID of the C-STORE request
+     */
+    private void receive(Association as, PresentationContext pc, String cuid, String iuid, PDVInputStream payload) throws IOException {
         String tsuid = pc.getTransferSyntax();
+        if (workers.isEmpty()) startWorkers();
+        // Spool only when the buffer is full, otherwise wait for room before reading more from the source
+        if (spoolFolder != null && isBufferFull()) {
+            queue.add(new Instance(null, spool(as, cuid, iuid, tsuid, payload), 0));
+            return;
+        }
+        awaitBuffer();
+
         Attributes image = payload.readDataset(tsuid);
-        AttribUtils.updateTags(image, changeTags);
+        changeTags.apply(image);
         currentFileName = AttribUtils.getFirstString(image, new Integer[]{Tag.AffectedSOPInstanceUID, Tag.MediaStorageSOPInstanceUID, Tag.SOPInstanceUID});
 
-        TransferScu transferScu = new TransferScu(connection, scuOperationConfig, image);
-        Future<String> result = executorService.submit(transferScu);
-        executorResults.add(result);
+        // The size is only known once decoded, so the instance waits until it fits within the byte budget
+        Instance instance = new Instance(image, null, Math.max(image.calcLength(DicomEncodingOptions.DEFAULT, true), 0));
+        admit(instance);
+        queue.add(instance);
+    }
+
+    private boolean isBufferFull() {
+        synchronized (bufferLock) {
+            return bufferCount >= queueSize || (maxBufferBytes > 0 && bufferBytes >= maxBufferBytes);
+        }
+    }
+
+    private void awaitBuffer() throws IOException {
+        synchronized (bufferLock) {
+            try {
+                while (bufferCount >= queueSize || (maxBufferBytes > 0 && bufferBytes >= maxBufferBytes)) {
+                    bufferLock.wait();
+                }
+            } catch (InterruptedException e) {
+                Thread t = Thread.currentThread();
+                t.getUncaughtExceptionHandler().uncaughtException(t, e);
+                t.interrupt();
+                throw new IOException(e);
+            }
+        }
+    }
+
+    /**
+     * Waits until a decoded instance fits within the buffer and counts it. An instance larger than the
+     * whole byte budget is only admitted into an empty buffer.
+     */
+    private void admit(Instance instance) throws IOException {
+        synchronized (bufferLock) {
+            try {
+                while (bufferCount >= queueSize || (maxBufferBytes > 0 && bufferCount > 0 && bufferBytes + instance.size > maxBufferBytes)) {
+                    bufferLock.wait();
+                }
+            } catch (InterruptedException e) {
+                Thread t = Thread.currentThread();
+                t.getUncaughtExceptionHandler().uncaughtException(t, e);
+                t.interrupt();
+                throw new IOException(e);
+            }
+            bufferCount++;
+            bufferBytes += instance.size;
+        }
+    }
+
+    /**
+     * Writes the payload to the spool folder as it arrives, without decoding it. Change Tags are applied
+     * when the worker sends the file.
+     */
+    private String spool(Association as, String cuid, String iuid, String tsuid, PDVInputStream payload) throws IOException {
+        Path folder = Files.createDirectories(Paths.get(spoolFolder));
+        Path file = Files.createTempFile(folder, "transfer_", ".dcm");
+        currentFileName = iuid != null ? iuid : file.toString();
+        Attributes fmi = StoreUtils.createFileMetaInformation(iuid, cuid, tsuid,
+                as.getRemoteImplClassUID(), as.getRemoteImplVersionName(), as.getRemoteAET());
+        try (OutputStream output = Files.newOutputStream(file)) {
+            StoreUtils.writeTo(output, payload, fmi);
+        } catch (IOException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        log.debug("Buffer full, spooled {} to {}", currentFileName, file);
+        return file.toString();
+    }
+
+    private void release(Instance instance) {
+        if (instance.fileName != null) {
+            try {
+                Files.deleteIfExists(Paths.get(instance.fileName));
+            } catch (IOException e) {
+                log.warn("Unable to delete spooled file {}: {}", instance.fileName, e.getMessage());
+            }
+        } else {
+            synchronized (bufferLock) {
+                bufferCount--;
+                bufferBytes -= instance.size;
+                bufferLock.notifyAll();
+            }
+        }
+    }
+
+    private void startWorkers() {
+        for (ScuConnection targetConnection : connection.getTargetConnections(associations)) {
+            // Decoded instances already have the tag changes, spooled files get them as they are sent
+            StoreScu storeScu = new StoreScu(targetConnection, scuOperationConfig.copy(), changeTags, iuidList);
+            storeScu.setOutstandingRequests(outstandingRequests);
+            workers.add(executorService.submit(() -> send(storeScu)));
+        }
+    }
+
+    private void send(StoreScu storeScu) {
+        try {
+            Instance instance;
+            while ((instance = queue.take()) != END) {
+                try {
+                    // After a failure keep taking instances so the C-GET is never blocked
+                    if (failure.get() != null) continue;
+                    if (instance.fileName != null) storeScu.store(instance.fileName);
+                    else storeScu.store(instance.data, null);
+                } catch (IOException | RuntimeException e) {
+                    log.error("C-STORE to target failed: {}", e.getMessage());
+                    failure.compareAndSet(null, e);
+                } finally {
+                    release(instance);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread t = Thread.currentThread();
+            t.getUncaughtExceptionHandler().uncaughtException(t, e);
+            t.interrupt();
+        } finally {
+            storeScu.close();
+        }
     }
 }
@@ -30,7 +30,6 @@ public class AttribUtils {
     private static final Pattern hexTag = Pattern.compile("^0[xX][0-9a-fA-F]{8}$");
     private static final Pattern intTag = Pattern.compile("^\\d+$");
     private static final Pattern pairTag = Pattern.compile("^([0-9a-fA-F]{4})\\W([0-9a-fA-F]{4})$");
-    private static final Pattern tagName = Pattern.compile("\\$\\{([A-Za-z0-9,]+?)}");
 
     private AttribUtils() { }
 
@@ -62,46 +61,21 @@ public class AttribUtils {
     }
 
     /**
-     * Modifies the tags of an Attributes object (i.e. image)
+     * Modifies the tags of an Attributes object (i.e. image). Operations handling many images compile a ChangeTagPlan once instead.
      * @param data The image data
      * @param changeTags Map of tag names to create or change.
      */
     public static void updateTags(Attributes data, Map<String, String> changeTags) {
-        // Apply tag changes to the image
-        if (changeTags != null && !changeTags.isEmpty()) {
-            Map<String, Object> tags = new HashMap<>();
-            for (Map.Entry<String, String> entry : changeTags.entrySet()) {
-                String value = entry.getValue();
-                // Check for replacement tags
-                List<String> tagNames = extractTagReplacements(value);
-                if (!tagNames.isEmpty()) {
-                    Map<String, Object> map = extractTags(data, tagNames);
-                    for (Map.Entry<String, Object> copyEntry : map.entrySet()) {
-                        value = applyTagReplacement(value, copyEntry.getKey(), (String) copyEntry.getValue());
-                    }
-                    changeTags.replace(entry.getKey(), value);
-                }
-                tags.put(entry.getKey(), value);
-            }
-            AttribUtils.addKeys(data, tags);
-        }
-    }
-
-    private static List<String> extractTagReplacements(String value) {
-        List<String> matchString = new ArrayList<>();
-        Matcher m = tagName.matcher(value);
-        while (m.find()) {
-            matchString.add(m.group(1));
-        }
-        return matchString;
-    }
-    private static String applyTagReplacement(String value, String tagName, String replaceValue) {
-        String regex = String.format("\\$\\{%s\\}", tagName);
-        return value.replaceAll(regex, replaceValue);
+        ChangeTagPlan.compile(changeTags).apply(data);
     }
 
-    private static int stringToTag(String name) {
-        int tag = -1;
+    /**
+     * Resolves a tag identity (keyword, hex, hex pair or integer) to its tag number
+     * @throws IllegalArgumentException if the name cannot be resolved
+     */
+    public static int stringToTag(String name) {
+        int tag = TagCache.tagOf(name);
+        if (tag != -1) return tag;
         if (hexTag.matcher(name).matches()) {
             tag = Integer.decode(name);
         } else if (intTag.matcher(name).matches()) {
@@ -119,6 +93,7 @@ public class AttribUtils {
         if (tag == -1) {
             throw new IllegalArgumentException(name);
         }
+        TagCache.putTag(name, tag);
         return tag;
     }
 
@@ -195,19 +170,30 @@ public class AttribUtils {
         return null;
     }
 
-    private static void tagToMap(Attributes data, int tag, Map<String,Object> map) {
-        // Get private creator of this tag
-        String privateCreator = null;
+    /**
+     * The name of a tag as used in maps, or null for private creators, which are part of the name of their private tags
+     */
+    static String tagNameOf(Attributes data, int tag) {
         String tagName;
-        if (TagUtils.isPrivateCreator(tag)) return;
+        if (TagUtils.isPrivateCreator(tag)) return null;
         else if (TagUtils.isPrivateTag(tag)) {
-            int creatorTag = TagUtils.creatorTagOf(tag);
-            privateCreator = data.getString(creatorTag, UNKNOWN);
-            tagName = String.format("%s (%04x,%04x)", privateCreator, tag >> 16, tag & 0xFFFF);
+            tagName = privateCreatorOf(data, tag) + " " + TagCache.privateNameOf(tag);
         } else {
-            tagName = ElementDictionary.keywordOf(tag, null);
+            tagName = TagCache.keywordOf(tag);
         }
         if (tagName.isEmpty()) tagName = UNKNOWN;
+        return tagName;
+    }
+
+    private static String privateCreatorOf(Attributes data, int tag) {
+        return data.getString(TagUtils.creatorTagOf(tag), UNKNOWN);
+    }
+
+    static void tagToMap(Attributes data, int tag, Map<String,Object> map) {
+        String tagName = tagNameOf(data, tag);
+        if (tagName == null) return;
+        // Get private creator of this tag
+        String privateCreator = TagUtils.isPrivateTag(tag) ? privateCreatorOf(data, tag) : null;
         Object tagValue = data.getValue(privateCreator, tag);
         if (tagValue instanceof Sequence) {
             Sequence tagSeq = (Sequence)tagValue;
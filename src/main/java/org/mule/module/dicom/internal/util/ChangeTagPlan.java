@@ -0,0 +1,163 @@
+/**
+ * Copyright (c) 2022 The Johns Hopkins University
+ * All rights reserved
+ *
+ * @author David J. Talley, Technology Innovation Center, Precision Medicine Analytics Platform, Johns Hopkins Medicine
+ *
+ */
+package org.mule.module.dicom.internal.util;
+
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.ElementDictionary;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.data.VR;
+import org.dcm4che3.util.TagUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Change Tags compiled once per operation. Each tag is resolved when the plan is compiled and each value is
+ * split into literal text and references to other tags, so applying the plan to an image only reads the
+ * referenced tags and sets the new values. The Change Tags map itself is never modified.
+ */
+public final class ChangeTagPlan {
+    private static final String UNKNOWN = "Unknown";
+    public static final ChangeTagPlan EMPTY = new ChangeTagPlan(new Change[0]);
+
+    private final Change[] changes;
+    private final boolean headerOnly;
+
+    /**
+     * One tag to create or change. The value is literals[0] + refs[0] + literals[1] + ... + literals[n]
+     */
+    private static final class Change {
+        private final int tag;
+        private final VR vr;
+        private final String[] literals;
+        private final int[] refs;
+
+        private Change(int tag, VR vr, String[] literals, int[] refs) {
+            this.tag = tag;
+            this.vr = vr;
+            this.literals = literals;
+            this.refs = refs;
+        }
+
+        private String valueOf(Attributes data) {
+            if (refs.length == 0) return literals[0];
+            StringBuilder sb = new StringBuilder(literals[0]);
+            for (int i = 0; i < refs.length; i++) {
+                sb.append(data.getString(refs[i], "")).append(literals[i + 1]);
+            }
+            return sb.toString();
+        }
+    }
+
+    private ChangeTagPlan(Change[] changes) {
+        this.changes = changes;
+        boolean beforePixelData = changes.length > 0;
+        for (Change change : changes) {
+            if (Integer.compareUnsigned(change.tag, Tag.PixelData) >= 0) beforePixelData = false;
+        }
+        this.headerOnly = beforePixelData;
+    }
+
+    /**
+     * @param changeTags Map of tag names to create or change, values may reference other tags as ${TagName}
+     * @throws IllegalArgumentException if a tag name cannot be resolved
+     */
+    public static ChangeTagPlan compile(Map<String, String> changeTags) {
+        if (changeTags == null || changeTags.isEmpty()) return EMPTY;
+        List<Change> standard = new ArrayList<>();
+        List<Change> privateTags = new ArrayList<>();
+        for (Map.Entry<String, String> entry : changeTags.entrySet()) {
+            int tag = AttribUtils.stringToTag(entry.getKey());
+            List<String> literals = new ArrayList<>();
+            List<Integer> refs = new ArrayList<>();
+            parseTemplate(entry.getValue() == null ? "" : entry.getValue(), literals, refs);
+            int[] refTags = new int[refs.size()];
+            for (int i = 0; i < refTags.length; i++) refTags[i] = refs.get(i);
+            String[] literalArray = literals.toArray(new String[0]);
+            if (TagUtils.isPrivateCreator(tag)) {
+                standard.add(new Change(tag, VR.LO, literalArray, refTags));
+            } else if (TagUtils.isPrivateTag(tag)) {
+                // Set after the private creators, which may be changed by the same plan
+                privateTags.add(new Change(tag, VR.LO, literalArray, refTags));
+            } else {
+                standard.add(new Change(tag, ElementDictionary.vrOf(tag, null), literalArray, refTags));
+            }
+        }
+        standard.addAll(privateTags);
+        return new ChangeTagPlan(standard.toArray(new Change[0]));
+    }
+
+    /**
+     * Splits a value around its ${TagName} references
+     */
+    private static void parseTemplate(String value, List<String> literals, List<Integer> refs) {
+        StringBuilder literal = new StringBuilder();
+        int pos = 0;
+        while (pos < value.length()) {
+            int start = value.indexOf("${", pos);
+            int end = start < 0 ? -1 : value.indexOf('}', start + 2);
+            if (end < 0) break;
+            String name = value.substring(start + 2, end);
+            if (!isReference(name)) {
+                literal.append(value, pos, start + 2);
+                pos = start + 2;
+                continue;
+            }
+            literal.append(value, pos, start);
+            literals.add(literal.toString());
+            literal.setLength(0);
+            refs.add(AttribUtils.stringToTag(name));
+            pos = end + 1;
+        }
+        literal.append(value.substring(Math.min(pos, value.length())));
+        literals.add(literal.toString());
+    }
+
+    private static boolean isReference(String name) {
+        if (name.isEmpty()) return false;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (!(Character.isLetterOrDigit(c) && c < 128) && c != ',') return false;
+        }
+        return true;
+    }
+
+    public boolean isEmpty() {
+        return changes.length == 0;
+    }
+
+    /**
+     * True when every tag comes before Pixel Data, so the rest of the image can be copied as is
+     */
+    public boolean isHeaderOnly() {
+        return headerOnly;
+    }
+
+    /**
+     * Creates or changes the tags of an image. Every value is resolved from the image as received, before any change.
+     */
+    public void apply(Attributes data) {
+        if (changes.length == 0) return;
+        String[] values = new String[changes.length];
+        for (int i = 0; i < changes.length; i++) {
+            values[i] = changes[i].valueOf(data);
+        }
+        for (int i = 0; i < changes.length; i++) {
+            Change change = changes[i];
+            if (TagUtils.isPrivateTag(change.tag) && !TagUtils.isPrivateCreator(change.tag)) {
+                String privateCreator = data.getString(TagUtils.creatorTagOf(change.tag), UNKNOWN);
+                data.setString(privateCreator, change.tag, VR.LO, values[i]);
+            } else if (TagUtils.isPrivateCreator(change.tag)) {
+                data.setString(change.tag, VR.LO, values[i]);
+            } else {
+                data.setValue(change.tag, change.vr, values[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,350 @@
+/**
+ * Copyright (c) 2022 The Johns Hopkins University
+ * All rights reserved
+ *
+ * @author David J. Talley, Technology Innovation Center, Precision Medicine Analytics Platform, Johns Hopkins Medicine
+ *
+ */
+package org.mule.module.dicom.internal.util;
+
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.VR;
+import org.mule.module.dicom.api.content.DicomValue;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Query results stored by column instead of one map per result. Numeric tags are kept in primitive arrays and
+ * repeated strings (Modality, InstitutionName...) share one instance from a pool. Each result is a read-only
+ * map view whose DicomValue is created when it is read, so the results work anywhere a list of maps does.
+ */
+public class ColumnarResults extends AbstractList<Map<String, DicomValue>> implements Serializable {
+    private static final long serialVersionUID = 2967180354471843961L;
+    // Strings seen after the pool is full are still stored, only not shared
+    private static final int MAX_POOL_SIZE = 4096;
+
+    private enum Kind { INT, SHORT, LONG, FLOAT, DOUBLE, STRING, OBJECT }
+
+    private final Map<String, Column> columnIndex = new HashMap<>();
+    private final List<Column> columns = new ArrayList<>();
+    private final Map<String, String> pool = new HashMap<>();
+    private int rows = 0;
+
+    /**
+     * Adds a result holding every tag of the data set
+     */
+    public void add(Attributes data) {
+        for (int tag : data.tags()) {
+            addTag(data, tag);
+        }
+        rows++;
+    }
+
+    /**
+     * Adds a result holding the named tags of the data set
+     * @param tagNames tag identities (name, hex value, hex pair, or integer)
+     */
+    public void add(Attributes data, List<String> tagNames) {
+        for (String tagName : tagNames) {
+            addTag(data, AttribUtils.stringToTag(tagName));
+        }
+        rows++;
+    }
+
+    @Override
+    public Map<String, DicomValue> get(int index) {
+        if (index < 0 || index >= rows) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + rows);
+        return new Row(index);
+    }
+
+    @Override
+    public int size() {
+        return rows;
+    }
+
+    private void addTag(Attributes data, int tag) {
+        String name = AttribUtils.tagNameOf(data, tag);
+        if (name == null) return;
+        VR vr = data.getVR(tag);
+        Kind kind = kindOf(vr);
+        if (kind == null) return;
+        Column column = columnIndex.get(name);
+        if (column == null) {
+            column = new Column(name, kind);
+            columnIndex.put(name, column);
+            columns.add(column);
+        } else if (column.kind != kind) {
+            // Mixed types in one column, fall back to the values maps would hold
+            column.toObjects(rows);
+            kind = Kind.OBJECT;
+        }
+        switch (kind) {
+            case INT:
+                column.setInt(rows, data.getInt(tag, 0));
+                break;
+            case SHORT:
+                column.setShort(rows, (short) data.getInt(tag, 0));
+                break;
+            case LONG:
+                column.setLong(rows, data.getLong(tag, 0));
+                break;
+            case FLOAT:
+                column.setFloat(rows, data.getFloat(tag, 0));
+                break;
+            case DOUBLE:
+                column.setDouble(rows, data.getDouble(tag, 0));
+                break;
+            case STRING:
+                column.setObject(rows, intern(data.getString(tag)));
+                break;
+            default:
+                Map<String, Object> map = new HashMap<>(2);
+                AttribUtils.tagToMap(data, tag, map);
+                if (map.containsKey(name)) column.setObject(rows, map.get(name));
+                break;
+        }
+    }
+
+    /**
+     * Same types as AttribUtils.attributesToMap, null when the tag is left out
+     */
+    private static Kind kindOf(VR vr) {
+        if (vr == null) return Kind.OBJECT;
+        if (vr.isIntType()) return Kind.INT;
+        if (vr.isStringType()) return Kind.STRING;
+        switch (vr) {
+            case FD:
+            case OD:
+                return Kind.DOUBLE;
+            case FL:
+            case OF:
+                return Kind.FLOAT;
+            case OL:
+            case SL:
+            case US:
+                return Kind.INT;
+            case OW:
+            case SS:
+                return Kind.SHORT;
+            case OV:
+            case SV:
+            case UL:
+            case UV:
+                return Kind.LONG;
+            case AT:
+                return null;
+            case OB:
+            case UN:
+            case SQ:
+                return Kind.OBJECT;
+            default:
+                return Kind.STRING;
+        }
+    }
+
+    private String intern(String value) {
+        if (value == null) return null;
+        String pooled = pool.get(value);
+        if (pooled != null) return pooled;
+        if (pool.size() < MAX_POOL_SIZE) pool.put(value, value);
+        return value;
+    }
+
+    /**
+     * The values of one tag for every result. Only the array of its kind is used.
+     */
+    private static final class Column implements Serializable {
+        private static final long serialVersionUID = -6307516228317504522L;
+        private final String name;
+        private Kind kind;
+        private final BitSet present = new BitSet();
+        private int[] ints;
+        private short[] shorts;
+        private long[] longs;
+        private float[] floats;
+        private double[] doubles;
+        private Object[] objects;
+
+        private Column(String name, Kind kind) {
+            this.name = name;
+            this.kind = kind;
+        }
+
+        private static int grow(int length, int row) {
+            return Math.max(Math.max(length * 2, 16), row + 1);
+        }
+
+        private void setInt(int row, int value) {
+            if (ints == null) ints = new int[grow(0, row)];
+            else if (row >= ints.length) ints = Arrays.copyOf(ints, grow(ints.length, row));
+            ints[row] = value;
+            present.set(row);
+        }
+
+        private void setShort(int row, short value) {
+            if (shorts == null) shorts = new short[grow(0, row)];
+            else if (row >= shorts.length) shorts = Arrays.copyOf(shorts, grow(shorts.length, row));
+            shorts[row] = value;
+            present.set(row);
+        }
+
+        private void setLong(int row, long value) {
+            if (longs == null) longs = new long[grow(0, row)];
+            else if (row >= longs.length) longs = Arrays.copyOf(longs, grow(longs.length, row));
+            longs[row] = value;
+            present.set(row);
+        }
+
+        private void setFloat(int row, float value) {
+            if (floats == null) floats = new float[grow(0, row)];
+            else if (row >= floats.length) floats = Arrays.copyOf(floats, grow(floats.length, row));
+            floats[row] = value;
+            present.set(row);
+        }
+
+        private void setDouble(int row, double value) {
+            if (doubles == null) doubles = new double[grow(0, row)];
+            else if (row >= doubles.length) doubles = Arrays.copyOf(doubles, grow(doubles.length, row));
+            doubles[row] = value;
+            present.set(row);
+        }
+
+        private void setObject(int row, Object value) {
+            if (objects == null) objects = new Object[grow(0, row)];
+            else if (row >= objects.length) objects = Arrays.copyOf(objects, grow(objects.length, row));
+            objects[row] = value;
+            present.set(row);
+        }
+
+        /**
+         * Boxes the values of the first rows, so values of any type can follow
+         */
+        private void toObjects(int rows) {
+            if (kind == Kind.OBJECT) return;
+            if (kind != Kind.STRING) {
+                Object[] boxed = new Object[grow(0, rows)];
+                for (int row = present.nextSetBit(0); row >= 0 && row < rows; row = present.nextSetBit(row + 1)) {
+                    boxed[row] = valueAt(row);
+                }
+                objects = boxed;
+                ints = null;
+                shorts = null;
+                longs = null;
+                floats = null;
+                doubles = null;
+            }
+            kind = Kind.OBJECT;
+        }
+
+        private Object valueAt(int row) {
+            switch (kind) {
+                case INT:
+                    return ints[row];
+                case SHORT:
+                    return shorts[row];
+                case LONG:
+                    return longs[row];
+                case FLOAT:
+                    return floats[row];
+                case DOUBLE:
+                    return doubles[row];
+                default:
+                    return objects[row];
+            }
+        }
+
+        private DicomValue dicomValueAt(int row) {
+            switch (kind) {
+                case INT:
+                    return DicomValue.of(ints[row]);
+                case SHORT:
+                    return DicomValue.of(shorts[row]);
+                case LONG:
+                    return DicomValue.of(longs[row]);
+                case FLOAT:
+                    return DicomValue.of(floats[row]);
+                case DOUBLE:
+                    return DicomValue.of(doubles[row]);
+                default:
+                    return new DicomValue(objects[row]);
+            }
+        }
+    }
+
+    /**
+     * Read-only view of one result
+     */
+    private final class Row extends AbstractMap<String, DicomValue> implements Serializable {
+        private static final long serialVersionUID = 4470695170584617243L;
+        private final int row;
+
+        private Row(int row) {
+            this.row = row;
+        }
+
+        @Override
+        public DicomValue get(Object key) {
+            Column column = columnIndex.get(key);
+            if (column == null || !column.present.get(row)) return null;
+            return column.dicomValueAt(row);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            Column column = columnIndex.get(key);
+            return column != null && column.present.get(row);
+        }
+
+        @Override
+        public Set<Entry<String, DicomValue>> entrySet() {
+            return new AbstractSet<Entry<String, DicomValue>>() {
+                @Override
+                public Iterator<Entry<String, DicomValue>> iterator() {
+                    return new Iterator<Entry<String, DicomValue>>() {
+                        private int next = advance(0);
+
+                        private int advance(int from) {
+                            int i = from;
+                            while (i < columns.size() && !columns.get(i).present.get(row)) i++;
+                            return i;
+                        }
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < columns.size();
+                        }
+
+                        @Override
+                        public Entry<String, DicomValue> next() {
+                            if (!hasNext()) throw new NoSuchElementException();
+                            Column column = columns.get(next);
+                            next = advance(next + 1);
+                            return new SimpleImmutableEntry<>(column.name, column.dicomValueAt(row));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    int size = 0;
+                    for (Column column : columns) {
+                        if (column.present.get(row)) size++;
+                    }
+                    return size;
+                }
+            };
+        }
+    }
+}
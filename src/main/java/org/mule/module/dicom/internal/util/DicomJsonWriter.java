@@ -0,0 +1,269 @@
+/**
+ * Copyright (c) 2022 The Johns Hopkins University
+ * All rights reserved
+ *
+ * @author David J. Talley, Technology Innovation Center, Precision Medicine Analytics Platform, Johns Hopkins Medicine
+ *
+ */
+package org.mule.module.dicom.internal.util;
+
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.BulkData;
+import org.dcm4che3.data.Sequence;
+import org.dcm4che3.data.VR;
+import org.dcm4che3.util.TagUtils;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Writes data sets as DICOM JSON (PS3.18 F.2) straight from their Attributes, either as a JSON array of
+ * results or as one result per line (NDJSON).
+ */
+public class DicomJsonWriter {
+    private static final String[] PN_GROUPS = {"Alphabetic", "Ideographic", "Phonetic"};
+    private final Writer out;
+    private final boolean lineDelimited;
+    private int count = 0;
+
+    public DicomJsonWriter(OutputStream out, boolean lineDelimited) {
+        this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        this.lineDelimited = lineDelimited;
+    }
+
+    /**
+     * Writes one result, as the next element of the array or the next line
+     */
+    public void writeResult(Attributes data) throws IOException {
+        if (lineDelimited) {
+            writeDataset(data, data.tags());
+            out.write('\n');
+        } else {
+            out.write(count == 0 ? '[' : ',');
+            writeDataset(data, data.tags());
+        }
+        count++;
+        out.flush();
+    }
+
+    /**
+     * Ends the results, closing the array
+     */
+    public void finish() throws IOException {
+        if (!lineDelimited) out.write(count == 0 ? "[]" : "]");
+        out.flush();
+    }
+
+    /**
+     * Writes the given tags of a data set as a single JSON object
+     * @param tags Tags to write, in ascending order
+     */
+    public void writeObject(Attributes data, int[] tags) throws IOException {
+        writeDataset(data, tags);
+        out.flush();
+    }
+
+    private void writeDataset(Attributes data, int[] tags) throws IOException {
+        out.write('{');
+        boolean first = true;
+        for (int tag : tags) {
+            VR vr = data.getVR(tag);
+            if (vr == null) continue;
+            if (!first) out.write(',');
+            first = false;
+            out.write('"');
+            out.write(TagUtils.toHexString(tag));
+            out.write("\":{\"vr\":\"");
+            out.write(vr.name());
+            out.write('"');
+            writeValue(data, tag, vr);
+            out.write('}');
+        }
+        out.write('}');
+    }
+
+    private void writeValue(Attributes data, int tag, VR vr) throws IOException {
+        Object value = data.getValue(tag);
+        if (value instanceof Sequence) {
+            Sequence seq = (Sequence) value;
+            if (seq.isEmpty()) return;
+            out.write(",\"Value\":[");
+            for (int i = 0; i < seq.size(); i++) {
+                if (i > 0) out.write(',');
+                Attributes item = seq.get(i);
+                writeDataset(item, item.tags());
+            }
+            out.write(']');
+        } else if (value instanceof BulkData) {
+            out.write(",\"BulkDataURI\":");
+            writeString(((BulkData) value).getURI());
+        } else if (value instanceof byte[] || value instanceof String || value instanceof String[]) {
+            if (data.containsValue(tag)) writeValues(data, tag, vr);
+        }
+        // Encapsulated fragments are left without a value
+    }
+
+    private void writeValues(Attributes data, int tag, VR vr) throws IOException {
+        switch (vr) {
+            case OB:
+            case OD:
+            case OF:
+            case OL:
+            case OV:
+            case OW:
+            case UN:
+                byte[] bytes = data.getBytes(tag);
+                if (data.bigEndian()) bytes = vr.toggleEndian(bytes, true);
+                out.write(",\"InlineBinary\":\"");
+                out.write(Base64.getEncoder().encodeToString(bytes));
+                out.write('"');
+                return;
+            default:
+                break;
+        }
+        out.write(",\"Value\":[");
+        switch (vr) {
+            case US:
+            case SS:
+            case SL:
+                int[] ints = data.getInts(tag);
+                for (int i = 0; i < ints.length; i++) {
+                    if (i > 0) out.write(',');
+                    out.write(Integer.toString(ints[i]));
+                }
+                break;
+            case UL:
+                int[] uints = data.getInts(tag);
+                for (int i = 0; i < uints.length; i++) {
+                    if (i > 0) out.write(',');
+                    out.write(Integer.toUnsignedString(uints[i]));
+                }
+                break;
+            case SV:
+            case UV:
+                long[] longs = data.getLongs(tag);
+                for (int i = 0; i < longs.length; i++) {
+                    if (i > 0) out.write(',');
+                    out.write(vr == VR.UV ? Long.toUnsignedString(longs[i]) : Long.toString(longs[i]));
+                }
+                break;
+            case FL:
+                float[] floats = data.getFloats(tag);
+                for (int i = 0; i < floats.length; i++) {
+                    if (i > 0) out.write(',');
+                    writeNumber(Float.isFinite(floats[i]), Float.toString(floats[i]));
+                }
+                break;
+            case FD:
+                double[] doubles = data.getDoubles(tag);
+                for (int i = 0; i < doubles.length; i++) {
+                    if (i > 0) out.write(',');
+                    writeNumber(Double.isFinite(doubles[i]), Double.toString(doubles[i]));
+                }
+                break;
+            case AT:
+                int[] tags = data.getInts(tag);
+                for (int i = 0; i < tags.length; i++) {
+                    if (i > 0) out.write(',');
+                    writeString(TagUtils.toHexString(tags[i]));
+                }
+                break;
+            default:
+                writeStrings(data.getStrings(tag), vr);
+                break;
+        }
+        out.write(']');
+    }
+
+    private void writeStrings(String[] values, VR vr) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) out.write(',');
+            String value = values[i];
+            if (value == null || value.isEmpty()) {
+                out.write("null");
+            } else if (vr == VR.PN) {
+                writePersonName(value);
+            } else if (vr == VR.IS) {
+                writeInteger(value);
+            } else if (vr == VR.DS) {
+                writeDecimal(value);
+            } else {
+                writeString(value);
+            }
+        }
+    }
+
+    private void writePersonName(String value) throws IOException {
+        String[] groups = value.split("=", PN_GROUPS.length);
+        out.write('{');
+        boolean first = true;
+        for (int i = 0; i < groups.length; i++) {
+            if (groups[i].isEmpty()) continue;
+            if (!first) out.write(',');
+            first = false;
+            out.write('"');
+            out.write(PN_GROUPS[i]);
+            out.write("\":");
+            writeString(groups[i]);
+        }
+        out.write('}');
+    }
+
+    private void writeInteger(String value) throws IOException {
+        String trimmed = value.trim();
+        try {
+            out.write(Long.toString(Long.parseLong(trimmed.startsWith("+") ? trimmed.substring(1) : trimmed)));
+        } catch (NumberFormatException e) {
+            writeString(value);
+        }
+    }
+
+    private void writeDecimal(String value) throws IOException {
+        try {
+            double d = Double.parseDouble(value);
+            writeNumber(Double.isFinite(d), Double.toString(d));
+        } catch (NumberFormatException e) {
+            writeString(value);
+        }
+    }
+
+    private void writeNumber(boolean finite, String number) throws IOException {
+        // JSON has no NaN or Infinity
+        if (finite) out.write(number);
+        else writeString(number);
+    }
+
+    private void writeString(String value) throws IOException {
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.write("\\\"");
+                    break;
+                case '\\':
+                    out.write("\\\\");
+                    break;
+                case '\n':
+                    out.write("\\n");
+                    break;
+                case '\r':
+                    out.write("\\r");
+                    break;
+                case '\t':
+                    out.write("\\t");
+                    break;
+                default:
+                    if (c < 0x20) out.write(String.format("\\u%04x", (int) c));
+                    else out.write(c);
+                    break;
+            }
+        }
+        out.write('"');
+    }
+}
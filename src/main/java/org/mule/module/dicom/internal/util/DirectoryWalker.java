@@ -0,0 +1,164 @@
+/**
+ * Copyright (c) 2022 The Johns Hopkins University
+ * All rights reserved
+ *
+ * @author David J. Talley, Technology Innovation Center, Precision Medicine Analytics Platform, Johns Hopkins Medicine
+ *
+ */
+package org.mule.module.dicom.internal.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lists the regular files under a set of folders while they are being consumed. Subfolders are read in
+ * parallel on a fork-join pool, and the files found are handed over through a bounded queue, so the first
+ * file can be sent while the walk goes on and memory stays flat however many files there are. When the
+ * queue is full the walk waits for the consumers.
+ */
+public class DirectoryWalker implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(DirectoryWalker.class);
+    private static final long OFFER_INTERVAL = 100;
+    private static final Path END = Paths.get("");
+    private final BlockingQueue<Path> queue;
+    private final ForkJoinPool pool;
+    private volatile boolean closed = false;
+
+    /**
+     * Starts walking. A root that is a file is listed as is.
+     * @param queueSize Files found ahead of the consumers
+     * @param parallelism Folders read at the same time
+     */
+    public DirectoryWalker(List<Path> roots, int queueSize, int parallelism) {
+        queue = new ArrayBlockingQueue<>(Math.max(queueSize, 1));
+        pool = new ForkJoinPool(Math.max(parallelism, 1));
+        pool.execute(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                try {
+                    List<Walk> walks = new ArrayList<>();
+                    for (Path root : roots) {
+                        if (Files.isDirectory(root)) walks.add(new Walk(root));
+                        else if (Files.exists(root)) put(root);
+                    }
+                    invokeAll(walks);
+                } finally {
+                    end();
+                }
+            }
+        });
+    }
+
+    /**
+     * Waits for the next file. Safe to call from several consumers.
+     * @return null once every file has been listed
+     */
+    public Path next() throws InterruptedException {
+        Path path = queue.take();
+        if (path == END) {
+            // Leave the end marker for the other consumers
+            queue.offer(END);
+            return null;
+        }
+        return path;
+    }
+
+    /**
+     * Stops the walk, releasing any folder reader waiting for room in the queue
+     */
+    @Override
+    public void close() {
+        closed = true;
+        queue.clear();
+        pool.shutdown();
+    }
+
+    private void put(Path path) {
+        try {
+            while (!closed && !queue.offer(path, OFFER_INTERVAL, TimeUnit.MILLISECONDS)) {
+                // Wait for the consumers
+            }
+        } catch (InterruptedException e) {
+            log.warn("Walk interrupted, files after {} are not listed", path);
+            closed = true;
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Queues the end marker, which consumers wait for, even when the walk was stopped or interrupted
+     */
+    private void end() {
+        boolean interrupted = Thread.interrupted();
+        if (interrupted) closed = true;
+        while (!queue.offer(END)) {
+            if (closed) {
+                // Nobody will take the files left, make room for the end marker
+                queue.clear();
+                continue;
+            }
+            try {
+                if (queue.offer(END, OFFER_INTERVAL, TimeUnit.MILLISECONDS)) break;
+            } catch (InterruptedException e) {
+                log.warn("Walk interrupted while ending");
+                interrupted = true;
+                closed = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Lists the files of one folder, then walks its subfolders in parallel
+     */
+    private final class Walk extends RecursiveAction {
+        private static final long serialVersionUID = -1794629186263818027L;
+        private final transient Path folder;
+
+        private Walk(Path folder) {
+            this.folder = folder;
+        }
+
+        @Override
+        protected void compute() {
+            List<Walk> walks = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(folder)) {
+                for (Path entry : entries) {
+                    if (closed) return;
+                    BasicFileAttributes attributes;
+                    try {
+                        attributes = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    } catch (IOException e) {
+                        log.debug("Unable to read {}: {}", entry, e.getMessage());
+                        continue;
+                    }
+                    if (attributes.isDirectory()) {
+                        walks.add(new Walk(entry));
+                    } else if (!attributes.isSymbolicLink() || !Files.isDirectory(entry)) {
+                        // Links to folders are not followed
+                        put(entry);
+                    }
+                }
+            } catch (IOException e) {
+                log.error("Unable to list {}: {}", folder, e.getMessage());
+            }
+            invokeAll(walks);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ * Copyright (c) 2022 The Johns Hopkins University
+ * All rights reserved
+ *
+ * @author David J. Talley, Technology Innovation Center, Precision Medicine Analytics Platform, Johns Hopkins Medicine
+ *
+ */
+package org.mule.module.dicom.internal.util;
+
+import org.dcm4che3.net.DataWriter;
+import org.dcm4che3.net.PDVOutputStream;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes the encoded data set of a DICOM file, starting after its File Meta Information, straight into the
+ * PDU buffer of the association without decoding any element.
+ */
+public class FileDataWriter implements DataWriter {
+    private final Path file;
+    private final FileChannel channel;
+    private final long offset;
+
+    /**
+     * @param offset position of the data set in the file, after the File Meta Information
+     */
+    public FileDataWriter(Path file, long offset) {
+        this.file = file;
+        this.channel = null;
+        this.offset = offset;
+    }
+
+    /**
+     * Writes from a channel that is already open, leaving it open
+     * @param offset position of the data set in the file, after the File Meta Information
+     */
+    public FileDataWriter(FileChannel channel, long offset) {
+        this.file = null;
+        this.channel = channel;
+        this.offset = offset;
+    }
+
+    @Override
+    public void writeTo(PDVOutputStream out, String tsuid) throws IOException {
+        if (channel != null) {
+            channel.position(offset);
+            out.copyFrom(Channels.newInputStream(channel));
+            return;
+        }
+        try (FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.READ)) {
+            fileChannel.position(offset);
+            out.copyFrom(Channels.newInputStream(fileChannel));
+        }
+    }
+}
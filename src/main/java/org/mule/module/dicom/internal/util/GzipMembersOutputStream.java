@@ -0,0 +1,113 @@
+/**
+ * Copyright (c) 2022 The Johns Hopkins University
+ * All rights reserved
+ *
+ * @author David J. Talley, Technology Innovation Center, Precision Medicine Analytics Platform, Johns Hopkins Medicine
+ *
+ */
+package org.mule.module.dicom.internal.util;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Writes a series of independent gzip members, one per call to endMember (as BGZF does). The members together
+ * are still one valid gzip file, and any member can be decompressed on its own from its offset.
+ */
+public class GzipMembersOutputStream extends OutputStream {
+    private final OutputStream out;
+    private final int level;
+    private final int threads;
+    private final ExecutorService executor;
+    private ParallelGzipOutputStream member = null;
+    private long position = 0;
+    private boolean closed = false;
+
+    /**
+     * @param level Gzip level
+     * @param threads Threads compressing blocks of each member
+     */
+    public GzipMembersOutputStream(OutputStream out, int level, int threads) {
+        this.out = out;
+        this.level = level;
+        this.threads = Math.max(threads, 1);
+        executor = Executors.newFixedThreadPool(this.threads);
+    }
+
+    /**
+     * Offset in the compressed output where the next member starts
+     */
+    public long getPosition() { return position; }
+
+    @Override
+    public void write(int b) throws IOException {
+        member().write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        member().write(b, off, len);
+    }
+
+    /**
+     * Completes the current member. Does nothing if nothing was written since the last member.
+     */
+    public void endMember() throws IOException {
+        if (member == null) return;
+        member.close();
+        member = null;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (member != null) member.flush();
+        else out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            endMember();
+        } finally {
+            executor.shutdownNow();
+            out.close();
+        }
+    }
+
+    private ParallelGzipOutputStream member() throws IOException {
+        if (closed) throw new IOException("Stream closed");
+        if (member == null) member = new ParallelGzipOutputStream(new MemberOutput(), level, threads, executor);
+        return member;
+    }
+
+    /**
+     * Counts the compressed bytes, and keeps the output open when a member is closed
+     */
+    private final class MemberOutput extends FilterOutputStream {
+        private MemberOutput() {
+            super(GzipMembersOutputStream.this.out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            position++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            position += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.flush();
+        }
+    }
+}
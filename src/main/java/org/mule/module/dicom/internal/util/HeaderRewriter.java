@@ -0,0 +1,83 @@
+/**
+ * Copyright (c) 2022 The Johns Hopkins University
+ * All rights reserved
+ *
+ * @author David J. Talley, Technology Innovation Center, Precision Medicine Analytics Platform, Johns Hopkins Medicine
+ *
+ */
+package org.mule.module.dicom.internal.util;
+
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.data.UID;
+import org.dcm4che3.data.VR;
+import org.dcm4che3.io.DicomInputStream;
+import org.dcm4che3.io.DicomOutputStream;
+import org.dcm4che3.net.DataWriter;
+import org.dcm4che3.net.PDVOutputStream;
+import org.dcm4che3.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Rewrites the attributes before Pixel Data of an encoded data set, then copies the rest of it byte for byte.
+ * The header is parsed from the stream up to the Pixel Data element, or the first element after where it would be,
+ * so the pixel data is never decoded or held in memory. The remaining bytes are read from the stream while writing, which must stay open until then.
+ */
+public class HeaderRewriter implements DataWriter {
+    private final Attributes header;
+    public Attributes getHeader() { return header; }
+
+    private final DicomInputStream remaining;
+    private final int stopTag;
+    private final VR stopVR;
+    private final int stopLength;
+
+    private HeaderRewriter(Attributes header, DicomInputStream remaining, int stopTag, VR stopVR, int stopLength) {
+        this.header = header;
+        this.remaining = remaining;
+        this.stopTag = stopTag;
+        this.stopVR = stopVR;
+        this.stopLength = stopLength;
+    }
+
+    /**
+     * A deflated data set cannot be copied byte for byte after its header is changed
+     */
+    public static boolean supports(String tsuid) {
+        return tsuid != null && !tsuid.equals(UID.DeflatedExplicitVRLittleEndian) && !tsuid.equals(UID.JPIPReferencedDeflate);
+    }
+
+    /**
+     * Reads the header of a data set and applies the tag changes to it
+     * @param dis The data set, positioned after any File Meta Information
+     * @param changeTags Tags to create or change, all before Pixel Data
+     */
+    public static HeaderRewriter read(DicomInputStream dis, ChangeTagPlan changeTags) throws IOException {
+        Attributes header = dis.readDataset(-1, Tag.PixelData);
+        // Parsing stops at the first element from Pixel Data on, which is a later element when there is no Pixel Data
+        int tag = dis.tag();
+        boolean stopped = Integer.compareUnsigned(tag, Tag.PixelData) >= 0 && !header.contains(tag);
+        changeTags.apply(header);
+        if (!stopped) return new HeaderRewriter(header, null, 0, null, 0);
+        return new HeaderRewriter(header, dis, tag, dis.vr(), dis.length());
+    }
+
+    @Override
+    public void writeTo(PDVOutputStream out, String tsuid) throws IOException {
+        writeTo((OutputStream) out, tsuid);
+    }
+
+    public void writeTo(OutputStream out, String tsuid) throws IOException {
+        DicomOutputStream dos = new DicomOutputStream(out, tsuid);
+        dos.writeDataset(null, header);
+        if (remaining != null) {
+            // The header of the element the parser stopped at was consumed, its value and the rest follow as is
+            dos.writeHeader(stopTag, stopVR, stopLength);
+            dos.flush();
+            StreamUtils.copy(remaining, out);
+        }
+        dos.flush();
+    }
+}
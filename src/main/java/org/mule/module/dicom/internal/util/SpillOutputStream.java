@@ -0,0 +1,79 @@
+/**
+ * Copyright (c) 2022 The Johns Hopkins University
+ * All rights reserved
+ *
+ * @author David J. Talley, Technology Innovation Center, Precision Medicine Analytics Platform, Johns Hopkins Medicine
+ *
+ */
+package org.mule.module.dicom.internal.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Keeps written data in memory up to a threshold, then moves it to a file and continues writing there.
+ * Archive entries need their size before their data, so content that fits is handed over without touching the disk.
+ */
+public class SpillOutputStream extends OutputStream {
+    private final Path spillFile;
+    private final long threshold;
+    private Buffer memory = new Buffer();
+    private OutputStream file = null;
+    private boolean closed = false;
+
+    public SpillOutputStream(Path spillFile, long threshold) {
+        this.spillFile = spillFile;
+        this.threshold = threshold;
+    }
+
+    /**
+     * True when the data was written to the spill file rather than kept in memory
+     */
+    public boolean isSpilled() { return file != null; }
+
+    /**
+     * The data kept in memory, valid up to getLength. Not copied, so it must not be written afterwards.
+     */
+    public byte[] getData() { return memory.data(); }
+    public int getLength() { return memory.size(); }
+
+    @Override
+    public void write(int b) throws IOException {
+        target(1).write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        target(len).write(b, off, len);
+    }
+
+    private OutputStream target(int len) throws IOException {
+        if (closed) throw new IOException("Stream closed");
+        if (file == null && memory.size() + (long) len > threshold) {
+            file = Files.newOutputStream(spillFile, StandardOpenOption.CREATE_NEW);
+            memory.writeTo(file);
+            memory = new Buffer();
+        }
+        return file != null ? file : memory;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (file != null) file.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        if (file != null) file.close();
+    }
+
+    private static final class Buffer extends ByteArrayOutputStream {
+        private byte[] data() { return buf; }
+    }
+}
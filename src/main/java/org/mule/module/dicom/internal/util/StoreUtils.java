@@ -12,7 +12,6 @@ import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -96,22 +95,4 @@ public class StoreUtils {
             log.error("Unable to delete " + outputFilePath, e);
         }
     }
-
-    public static List<Path> getFileList(String outputFilePath) {
-        if (outputFilePath == null || outputFilePath.isEmpty()) return new ArrayList<>();
-        try {
-            Path dir = Paths.get(outputFilePath);
-            if (Files.exists(dir)) {
-                try (Stream<Path> pathStream = Files.walk(dir)
-                        .filter(file -> !Files.isDirectory(file))) {
-                    return pathStream.collect(Collectors.toList());
-                }
-            } else {
-                return new ArrayList<>();
-            }
-        } catch (IOException e) {
-            log.error(e.getMessage(), e);
-            return new ArrayList<>();
-        }
-    }
 }
\ No newline at end of file
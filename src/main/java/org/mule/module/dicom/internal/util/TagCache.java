@@ -0,0 +1,221 @@
+/**
+ * Copyright (c) 2022 The Johns Hopkins University
+ * All rights reserved
+ *
+ * @author David J. Talley, Technology Innovation Center, Precision Medicine Analytics Platform, Johns Hopkins Medicine
+ *
+ */
+package org.mule.module.dicom.internal.util;
+
+import org.dcm4che3.data.ElementDictionary;
+import org.dcm4che3.data.Tag;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Process-wide cache of tag names to tag numbers and tag numbers to keywords, pre-warmed from the standard
+ * dictionary. The tables use open addressing over arrays. A miss is added in place under a lock, writing the
+ * reference that marks the slot as used last, so readers that find it see the whole entry without locking.
+ * A table is only replaced, through its volatile field, when it grows.
+ */
+public final class TagCache {
+    private static final Logger log = LoggerFactory.getLogger(TagCache.class);
+    // Names that are not keywords (hex, pairs, private tags) stop being cached past this size
+    private static final int MAX_ENTRIES = 1 << 15;
+
+    private static volatile NameTable names;
+    private static volatile KeywordTable keywords;
+    private static volatile KeywordTable privateNames;
+
+    static {
+        // Filled before they are published, so nothing can read them yet
+        NameTable nameTable = new NameTable(16384);
+        KeywordTable keywordTable = new KeywordTable(16384);
+        for (Field field : Tag.class.getFields()) {
+            if (field.getType() != int.class || !Modifier.isStatic(field.getModifiers())) continue;
+            try {
+                int tag = field.getInt(null);
+                nameTable = nameTable.put(field.getName(), tag);
+                keywordTable = keywordTable.put(tag, ElementDictionary.keywordOf(tag, null));
+            } catch (IllegalAccessException e) {
+                log.trace("Skipped {}", field.getName());
+            }
+        }
+        names = nameTable;
+        keywords = keywordTable;
+        privateNames = new KeywordTable(64);
+    }
+
+    private TagCache() { }
+
+    /**
+     * @return the tag of a name resolved before, or -1
+     */
+    public static int tagOf(String name) {
+        return names.get(name);
+    }
+
+    public static synchronized void putTag(String name, int tag) {
+        NameTable table = names;
+        if (table.size >= MAX_ENTRIES) return;
+        NameTable grown = table.put(name, tag);
+        if (grown != table) names = grown;
+    }
+
+    /**
+     * Same as ElementDictionary.keywordOf(tag, null)
+     */
+    public static String keywordOf(int tag) {
+        String keyword = keywords.get(tag);
+        if (keyword == null) {
+            keyword = ElementDictionary.keywordOf(tag, null);
+            synchronized (TagCache.class) {
+                KeywordTable table = keywords;
+                if (table.size < MAX_ENTRIES) {
+                    KeywordTable grown = table.put(tag, keyword);
+                    if (grown != table) keywords = grown;
+                }
+            }
+        }
+        return keyword;
+    }
+
+    /**
+     * The (gggg,eeee) part of the name of a private tag
+     */
+    public static String privateNameOf(int tag) {
+        String name = privateNames.get(tag);
+        if (name == null) {
+            name = String.format("(%04x,%04x)", tag >> 16, tag & 0xFFFF);
+            synchronized (TagCache.class) {
+                KeywordTable table = privateNames;
+                if (table.size < MAX_ENTRIES) {
+                    KeywordTable grown = table.put(tag, name);
+                    if (grown != table) privateNames = grown;
+                }
+            }
+        }
+        return name;
+    }
+
+    private static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * String keys to int values. An empty slot has a null key, and a key is written after its value.
+     */
+    private static final class NameTable {
+        private final AtomicReferenceArray<String> keys;
+        private final int[] values;
+        private int size = 0;
+
+        private NameTable(int capacity) {
+            keys = new AtomicReferenceArray<>(capacity);
+            values = new int[capacity];
+        }
+
+        private int get(String key) {
+            int mask = values.length - 1;
+            String k;
+            for (int i = mix(key.hashCode()) & mask; (k = keys.get(i)) != null; i = (i + 1) & mask) {
+                if (k.equals(key)) return values[i];
+            }
+            return -1;
+        }
+
+        /**
+         * Adds or replaces an entry, keeping the load factor at or below one half
+         * @return this table, or a larger copy holding the entry which has to be published
+         */
+        private NameTable put(String key, int value) {
+            if ((size + 1) * 2 <= values.length) {
+                insert(key, value);
+                return this;
+            }
+            NameTable table = new NameTable(values.length * 2);
+            for (int i = 0; i < values.length; i++) {
+                String k = keys.get(i);
+                if (k != null) table.insert(k, values[i]);
+            }
+            table.insert(key, value);
+            return table;
+        }
+
+        private void insert(String key, int value) {
+            int mask = values.length - 1;
+            int i = mix(key.hashCode()) & mask;
+            String k;
+            while ((k = keys.get(i)) != null) {
+                if (k.equals(key)) {
+                    values[i] = value;
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            values[i] = value;
+            keys.set(i, key);
+            size++;
+        }
+    }
+
+    /**
+     * Int keys to String values. An empty slot has a null value, and a value is written after its key.
+     */
+    private static final class KeywordTable {
+        private final int[] keys;
+        private final AtomicReferenceArray<String> values;
+        private int size = 0;
+
+        private KeywordTable(int capacity) {
+            keys = new int[capacity];
+            values = new AtomicReferenceArray<>(capacity);
+        }
+
+        private String get(int key) {
+            int mask = keys.length - 1;
+            String v;
+            for (int i = mix(key) & mask; (v = values.get(i)) != null; i = (i + 1) & mask) {
+                if (keys[i] == key) return v;
+            }
+            return null;
+        }
+
+        /**
+         * @return this table, or a larger copy holding the entry which has to be published
+         */
+        private KeywordTable put(int key, String value) {
+            if ((size + 1) * 2 <= keys.length) {
+                insert(key, value);
+                return this;
+            }
+            KeywordTable table = new KeywordTable(keys.length * 2);
+            for (int i = 0; i < keys.length; i++) {
+                String v = values.get(i);
+                if (v != null) table.insert(keys[i], v);
+            }
+            table.insert(key, value);
+            return table;
+        }
+
+        private void insert(int key, String value) {
+            int mask = keys.length - 1;
+            int i = mix(key) & mask;
+            while (values.get(i) != null) {
+                if (keys[i] == key) {
+                    values.set(i, value);
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values.set(i, value);
+            size++;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright (c) 2022 The Johns Hopkins University
+ * All rights reserved
+ *
+ * @author David J. Talley, Technology Innovation Center, Precision Medicine Analytics Platform, Johns Hopkins Medicine
+ *
+ */
+package org.mule.module.dicom.test;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mule.module.dicom.internal.util.ParallelGzipOutputStream;
+import org.mule.module.dicom.internal.util.SpillOutputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+class CompressionTest {
+    @Test
+    void parallelGzipIsStandardGzip() {
+        // Given
+        Random random = new Random(42);
+        byte[] data = new byte[1000000];
+        for (int i = 0; i < data.length; i++) data[i] = (byte) random.nextInt(16);
+
+        try {
+            // When
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (OutputStream out = new ParallelGzipOutputStream(compressed, 6, 4)) {
+                out.write(data, 0, 1000);
+                out.write(data, 1000, data.length - 1000);
+            }
+            ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+            try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray()))) {
+                byte[] buffer = new byte[8192];
+                int count;
+                while ((count = in.read(buffer)) > 0) decompressed.write(buffer, 0, count);
+            }
+
+            // Then
+            Assertions.assertTrue(compressed.size() < data.length);
+            Assertions.assertArrayEquals(data, decompressed.toByteArray());
+        } catch (Exception e) {
+            Assertions.fail(e.toString());
+        }
+    }
+
+    @Test
+    void spillsOnlyAboveThreshold() {
+        // Given
+        byte[] data = new byte[1000];
+        Arrays.fill(data, (byte) 7);
+
+        try {
+            Path folder = Files.createTempDirectory("spill");
+            Path small = folder.resolve("small.dcm");
+            Path large = folder.resolve("large.dcm");
+
+            // When
+            SpillOutputStream smallOut = new SpillOutputStream(small, 1000);
+            smallOut.write(data, 0, 600);
+            smallOut.write(data, 600, 400);
+            smallOut.close();
+            SpillOutputStream largeOut = new SpillOutputStream(large, 1000);
+            largeOut.write(data, 0, 600);
+            largeOut.write(data, 600, 400);
+            largeOut.write(7);
+            largeOut.close();
+
+            // Then
+            Assertions.assertFalse(smallOut.isSpilled());
+            Assertions.assertFalse(Files.exists(small));
+            Assertions.assertArrayEquals(data, Arrays.copyOf(smallOut.getData(), smallOut.getLength()));
+            Assertions.assertTrue(largeOut.isSpilled());
+            Assertions.assertEquals(1001, Files.size(large));
+            Files.delete(large);
+            Files.delete(folder);
+        } catch (Exception e) {
+            Assertions.fail(e.toString());
+        }
+    }
+}
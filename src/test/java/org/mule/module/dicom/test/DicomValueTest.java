@@ -0,0 +1,94 @@
+/**
+ * Copyright (c) 2022 The Johns Hopkins University
+ * All rights reserved
+ *
+ * @author David J. Talley, Technology Innovation Center, Precision Medicine Analytics Platform, Johns Hopkins Medicine
+ *
+ */
+package org.mule.module.dicom.test;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.mule.module.dicom.api.content.DicomValue;
+import org.mule.module.dicom.api.content.DicomValueType;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+class DicomValueTest {
+    private static final int VALUES = 100000;
+
+    @Test
+    void convertsOnAccess() {
+        // Given
+        List<Object> list = new ArrayList<>();
+        list.add("A");
+        list.add(2);
+        Map<String, Object> map = new HashMap<>();
+        map.put("Rows", 512);
+
+        // When
+        DicomValue integerValue = new DicomValue(42);
+        DicomValue shortValue = new DicomValue((short) -7);
+        DicomValue longValue = new DicomValue(4294967295L);
+        DicomValue floatValue = new DicomValue(1.5f);
+        DicomValue doubleValue = new DicomValue(2.25d);
+        DicomValue listValue = new DicomValue(list);
+        DicomValue mapValue = new DicomValue(map);
+
+        // Then
+        Assertions.assertEquals("42", integerValue.getAsString());
+        Assertions.assertEquals(42L, integerValue.getAsLong());
+        Assertions.assertEquals(42f, integerValue.getAsFloat());
+        Assertions.assertEquals(0, integerValue.getAsShort());
+        Assertions.assertEquals("-7", shortValue.getAsString());
+        Assertions.assertEquals(-7, shortValue.getAsInteger());
+        Assertions.assertEquals(-7d, shortValue.getAsDouble());
+        Assertions.assertEquals("4294967295", longValue.getAsString());
+        Assertions.assertEquals(0, longValue.getAsInteger());
+        Assertions.assertEquals(4294967295d, longValue.getAsDouble());
+        Assertions.assertEquals("1.5", floatValue.getAsString());
+        Assertions.assertEquals(1.5d, floatValue.getAsDouble());
+        Assertions.assertEquals("2.25", doubleValue.getAsString());
+        Assertions.assertEquals(0f, doubleValue.getAsFloat());
+        Assertions.assertEquals(DicomValueType.LIST, listValue.getType());
+        Assertions.assertEquals("A", listValue.getAsList().get(0).getAsString());
+        Assertions.assertEquals(2, listValue.getAsList().get(1).getAsInteger());
+        Assertions.assertEquals(512, mapValue.getAsMap().get("Rows").getAsInteger());
+        Assertions.assertEquals("{HashMap} size = 1", mapValue.toString());
+        Assertions.assertTrue(new DicomValue().isEmpty());
+        Assertions.assertEquals(DicomValueType.NULL, new DicomValue(new byte[0]).getType());
+    }
+
+    /**
+     * Allocation depends on the object layout of the JVM, so this only runs when asked for with -Ddicom.benchmark=true
+     */
+    @Test
+    void allocationPerValue() {
+        // Given
+        Assumptions.assumeTrue(Boolean.getBoolean("dicom.benchmark"));
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assumptions.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        Assumptions.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+        Object[] boxed = new Object[VALUES];
+        for (int i = 0; i < VALUES; i++) boxed[i] = i;
+        DicomValue[] values = new DicomValue[VALUES];
+
+        // When
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < VALUES; i++) values[i] = new DicomValue(boxed[i]);
+        long perValue = (threadBean.getThreadAllocatedBytes(threadId) - before) / VALUES;
+
+        // Then
+        // A value holding every representation, with its eager string, took over 100 bytes
+        Assertions.assertTrue(perValue <= 40, "Allocated " + perValue + " bytes per value");
+        Assertions.assertEquals(Integer.toString(VALUES - 1), values[VALUES - 1].getAsString());
+    }
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright (c) 2022 The Johns Hopkins University
+ * All rights reserved
+ *
+ * @author David J. Talley, Technology Innovation Center, Precision Medicine Analytics Platform, Johns Hopkins Medicine
+ *
+ */
+package org.mule.module.dicom.test;
+
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.data.VR;
+import org.dcm4che3.net.Status;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mule.module.dicom.internal.connection.MuleDimseRSPHandler;
+
+class DimseRSPHandlerTest {
+
+    @Test
+    void maxResultsEqualToMatches() {
+        // Given
+        MuleDimseRSPHandler handler = new MuleDimseRSPHandler(1);
+        handler.setMaxResults(3);
+
+        // When
+        for (int i = 1; i <= 3; i++) {
+            Attributes data = new Attributes();
+            data.setString(Tag.PatientID, VR.LO, "PID" + i);
+            handler.onDimseRSP(null, response(Status.Pending), data);
+        }
+        handler.onDimseRSP(null, response(Status.Success), null);
+
+        // Then
+        Assertions.assertEquals(3, handler.getResults().size());
+        Assertions.assertFalse(handler.isTruncated());
+        Assertions.assertFalse(handler.isCanceled());
+        Assertions.assertEquals(Status.Success, handler.getStatus());
+    }
+
+    private static Attributes response(int status) {
+        Attributes cmd = new Attributes();
+        cmd.setInt(Tag.Status, VR.US, status);
+        return cmd;
+    }
+}
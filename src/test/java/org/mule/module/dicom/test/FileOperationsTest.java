@@ -8,26 +8,36 @@
 package org.mule.module.dicom.test;
 
 import org.dcm4che3.data.Tag;
+import org.dcm4che3.util.StreamUtils;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.mule.module.dicom.api.content.DicomObject;
 import org.mule.module.dicom.api.content.DicomValue;
 import org.mule.module.dicom.internal.operation.FileOperations;
+import org.mule.module.dicom.internal.store.CompressAsync;
 import org.mule.module.dicom.internal.store.DicomFileType;
 import org.mule.module.dicom.internal.util.StoreUtils;
 import org.mule.runtime.api.metadata.TypedValue;
+import org.mule.runtime.extension.api.exception.ModuleException;
 import org.mule.runtime.extension.api.runtime.operation.Result;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
 
 class FileOperationsTest {
     final FileOperations fileOperations = new FileOperations();
@@ -79,6 +89,73 @@ class FileOperationsTest {
         }
     }
 
+    @Test
+    void parseFileTypes() throws IOException {
+        // Given
+        String filename = TestUtils.getSampleFilename("sample.dcm");
+        Path tmpFolder = Files.createTempDirectory("dicom_file_");
+        Path gzipFile = tmpFolder.resolve("sample.dcm.gz");
+        try (OutputStream outputStream = new GZIPOutputStream(Files.newOutputStream(gzipFile))) {
+            Files.copy(Paths.get(filename), outputStream);
+        }
+
+        try {
+            // When
+            DicomFileType dicom = DicomFileType.parse(filename);
+            DicomFileType gzip = DicomFileType.parse(gzipFile.toString());
+            DicomFileType folder = DicomFileType.parse(tmpFolder.toString());
+            DicomFileType missing = DicomFileType.parse(tmpFolder.resolve("missing.dcm").toString());
+
+            // Then
+            Assertions.assertEquals(DicomFileType.DICOM, dicom);
+            Assertions.assertEquals(DicomFileType.GZIP, gzip);
+            Assertions.assertEquals(DicomFileType.DIRECTORY, folder);
+            Assertions.assertEquals(DicomFileType.UNKNOWN, missing);
+        } finally {
+            StoreUtils.deleteFolder(tmpFolder.toString());
+        }
+    }
+
+    @Test
+    void readArchive() throws IOException {
+        // Given
+        String filename = TestUtils.getSampleFilename("sample.dcm");
+        Path tmpFolder = Files.createTempDirectory("dicom_file_");
+        String archiveName = tmpFolder.resolve("study.tar.gz").toString();
+        Map<String, String> first = new HashMap<>();
+        first.put("SOPInstanceUID", "1.2.3.4.1");
+        Map<String, String> second = new HashMap<>();
+        second.put("SOPInstanceUID", "1.2.3.4.2");
+        String firstFile = fileOperations.storeFile(tmpFolder.toString(), "first.dcm", fileOperations.readFile(filename), first);
+        String secondFile = fileOperations.storeFile(tmpFolder.toString(), "second.dcm", fileOperations.readFile(filename), second);
+        byte[] secondContent = Files.readAllBytes(Paths.get(secondFile));
+
+        try {
+            // When
+            CompressAsync compress = new CompressAsync(archiveName, 1024 * 1024, 6, 2, true);
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            Future<Path> compressed = executor.submit(compress);
+            executor.shutdown();
+            compress.add(firstFile);
+            compress.add("second.dcm", secondContent, secondContent.length);
+            compress.finish();
+            compressed.get();
+            List<Map<String, Object>> index = fileOperations.readArchiveIndex(archiveName, null);
+            DicomObject dicom = (DicomObject) fileOperations.readArchive(archiveName, "1.2.3.4.2");
+
+            // Then
+            Assertions.assertEquals(2, index.size());
+            Assertions.assertEquals("second.dcm", index.get(1).get("Entry"));
+            Assertions.assertEquals("1.2.3.4.2", dicom.getContent().getString(Tag.SOPInstanceUID));
+            Assertions.assertEquals("1.2.840.10008.1.2.1", dicom.getTransferSyntaxUid());
+            Assertions.assertThrows(ModuleException.class, () -> fileOperations.readArchive(archiveName, "1.2.3.4.3"));
+        } catch (Exception e) {
+            Assertions.fail(e.toString());
+        } finally {
+            StoreUtils.deleteFolder(tmpFolder.toString());
+        }
+    }
+
     @Test
     void extractTags() {
         // Given
@@ -104,6 +181,29 @@ class FileOperationsTest {
         }
     }
 
+    @Test
+    void extractTagsJson() {
+        // Given
+        String filename = TestUtils.getSampleFilename("sample.dcm");
+        DicomObject file = (DicomObject)fileOperations.readFile(filename);
+        List<String> tagNames = new ArrayList<>();
+        tagNames.add("PatientID");
+        tagNames.add("InstitutionName");
+
+        try (InputStream json = fileOperations.extractTagsJson(file, tagNames)) {
+            // When
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            StreamUtils.copy(json, output);
+            String text = new String(output.toByteArray(), StandardCharsets.UTF_8);
+
+            // Then
+            Assertions.assertEquals("{\"00080080\":{\"vr\":\"LO\",\"Value\":[\"St. Nowhere Hospital\"]},"
+                    + "\"00100020\":{\"vr\":\"LO\",\"Value\":[\"0050\"]}}", text);
+        } catch (Exception e) {
+            Assertions.fail(e.toString());
+        }
+    }
+
     @Test
     void extractAllTags() {
         // Given
@@ -143,4 +243,29 @@ class FileOperationsTest {
             Assertions.fail(e.toString());
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    void storeFileChangeTags() throws IOException {
+        // Given
+        String filename = TestUtils.getSampleFilename("sample.dcm");
+        String tmpFolder = Files.createTempDirectory("dicom_file_").toString();
+        Map<String, String> changeTags = new HashMap<>();
+        changeTags.put("InstitutionName", "${StudyDate}_${PatientID}");
+        changeTags.put("StudyDate", "19991231");
+
+        try {
+            // When
+            fileOperations.storeFile(tmpFolder, "first.dcm", fileOperations.readFile(filename), changeTags);
+            String outputFilename = fileOperations.storeFile(tmpFolder, "second.dcm", fileOperations.readFile(filename), changeTags);
+
+            // Then
+            Map<String, DicomValue> tags = fileOperations.extractTags(fileOperations.readFile(outputFilename), null);
+            Assertions.assertEquals("20061219_0050", tags.get("InstitutionName").toString());
+            Assertions.assertEquals("19991231", tags.get("StudyDate").toString());
+            Assertions.assertEquals("${StudyDate}_${PatientID}", changeTags.get("InstitutionName"), "Change Tags were modified");
+            StoreUtils.deleteFolder(tmpFolder);
+        } catch (Exception e) {
+            Assertions.fail(e.toString());
+        }
+    }
+}
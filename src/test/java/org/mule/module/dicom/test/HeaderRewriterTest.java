@@ -0,0 +1,59 @@
+/**
+ * Copyright (c) 2022 The Johns Hopkins University
+ * All rights reserved
+ *
+ * @author David J. Talley, Technology Innovation Center, Precision Medicine Analytics Platform, Johns Hopkins Medicine
+ *
+ */
+package org.mule.module.dicom.test;
+
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.data.UID;
+import org.dcm4che3.data.VR;
+import org.dcm4che3.io.DicomInputStream;
+import org.dcm4che3.io.DicomOutputStream;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mule.module.dicom.internal.util.ChangeTagPlan;
+import org.mule.module.dicom.internal.util.HeaderRewriter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+
+class HeaderRewriterTest {
+
+    @Test
+    void keepsElementsAfterMissingPixelData() throws IOException {
+        // Given
+        Attributes data = new Attributes();
+        data.setString(Tag.SOPInstanceUID, VR.UI, "1.2.3.4.1");
+        data.setString(Tag.PatientID, VR.LO, "PID");
+        data.setString(0x7FE10010, VR.LO, "PRIVATE");
+        data.setBytes(0x7FE11010, VR.OB, new byte[]{1, 2, 3, 4});
+        data.setBytes(Tag.DataSetTrailingPadding, VR.OB, new byte[]{0, 0});
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        try (DicomOutputStream dos = new DicomOutputStream(encoded, UID.ExplicitVRLittleEndian)) {
+            dos.writeDataset(null, data);
+        }
+        ChangeTagPlan changeTags = ChangeTagPlan.compile(Collections.singletonMap("PatientID", "CHANGED"));
+
+        // When
+        ByteArrayOutputStream rewritten = new ByteArrayOutputStream();
+        try (DicomInputStream dis = new DicomInputStream(new ByteArrayInputStream(encoded.toByteArray()), UID.ExplicitVRLittleEndian)) {
+            HeaderRewriter.read(dis, changeTags).writeTo(rewritten, UID.ExplicitVRLittleEndian);
+        }
+        Attributes actual;
+        try (DicomInputStream dis = new DicomInputStream(new ByteArrayInputStream(rewritten.toByteArray()), UID.ExplicitVRLittleEndian)) {
+            actual = dis.readDataset();
+        }
+
+        // Then
+        Assertions.assertEquals("CHANGED", actual.getString(Tag.PatientID));
+        Assertions.assertEquals("PRIVATE", actual.getString(0x7FE10010));
+        Assertions.assertArrayEquals(new byte[]{1, 2, 3, 4}, actual.getBytes(0x7FE11010));
+        Assertions.assertTrue(actual.contains(Tag.DataSetTrailingPadding));
+    }
+}
@@ -7,6 +7,7 @@
  */
 package org.mule.module.dicom.test;
 
+import org.dcm4che3.data.UID;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
@@ -14,17 +15,28 @@ import org.junit.jupiter.api.Test;
 import org.mule.module.dicom.api.parameter.AetConnection;
 import org.mule.module.dicom.api.parameter.StoreImage;
 import org.mule.module.dicom.api.parameter.Security;
+import org.mule.module.dicom.api.parameter.SopClass;
+import org.mule.module.dicom.api.parameter.StoreConcurrency;
 import org.mule.module.dicom.api.parameter.Timings;
 import org.mule.module.dicom.internal.config.ScpType;
+import org.mule.module.dicom.internal.config.ScuOperationConfig;
+import org.mule.module.dicom.internal.config.ScuType;
 import org.mule.module.dicom.internal.connection.ScpConnection;
 import org.mule.module.dicom.internal.connection.ScuConnection;
 import org.mule.module.dicom.internal.operation.FileOperations;
 import org.mule.module.dicom.internal.operation.ScuOperations;
+import org.mule.module.dicom.internal.operation.StoreScu;
 import org.mule.module.dicom.internal.store.MuleProcessStore;
+import org.mule.module.dicom.internal.util.StoreUtils;
 import org.mule.runtime.extension.api.exception.ModuleException;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -45,6 +57,7 @@ class LocalServerTest {
     static final String dicomFilenameTgz = TestUtils.getSampleFilename("sample.tar.gz");
     static final Map<String, String> changeTags = new HashMap<>();
     static final Timings timings = TestUtils.getTimings();
+    static final StoreConcurrency storeConcurrency = TestUtils.getStoreConcurrency();
 
     @BeforeAll
     static void setup() throws GeneralSecurityException, IOException {
@@ -57,7 +70,12 @@ class LocalServerTest {
 
         scpConnection = new ScpConnection(ScpType.STORE, aetConnection, null, scheduledExecutorService);
         MuleProcessStore fileStore = new MuleProcessStore(sourceCallback);
-        scpConnection.start(fileStore, null);
+        // Every SOP Class, also deflated
+        SopClass anySopClass = new SopClass();
+        anySopClass.setSopClassUid("*");
+        anySopClass.setTransferSyntax(new String[]{UID.ImplicitVRLittleEndian, UID.ExplicitVRLittleEndian,
+                UID.ExplicitVRBigEndian, UID.DeflatedExplicitVRLittleEndian});
+        scpConnection.start(fileStore, new SopClass[]{anySopClass});
         scuConnection = new ScuConnection(scuAetName, aetConnection, security, null, scheduledExecutorService);
 
         // Setup Test Variable Content
@@ -79,7 +97,7 @@ class LocalServerTest {
 
         try {
             // When
-            List<String> actualList = scuOperations.storeScu(scuConnection, storeImage, false, changeTags, timings);
+            List<String> actualList = scuOperations.storeScu(scuConnection, storeImage, false, changeTags, timings, storeConcurrency);
 
             // Then
             Assertions.assertArrayEquals(new String[]{"1.3.6.1.4.1.5962.1.1.50.1.1.1166562673.14401"}, actualList.toArray(new String[0]));
@@ -99,7 +117,7 @@ class LocalServerTest {
 
         try {
             // When
-            List<String> actualList = scuOperations.storeScu(scuConnection, storeImage, false, changeTags, timings);
+            List<String> actualList = scuOperations.storeScu(scuConnection, storeImage, false, changeTags, timings, storeConcurrency);
 
             // Then
             Assertions.assertArrayEquals(new String[]{
@@ -116,6 +134,110 @@ class LocalServerTest {
         }
     }
 
+    @Test
+    void storeScuGzipPipelined() throws IOException {
+        // Given
+        Path tmpFolder = Files.createTempDirectory("dicom_store_");
+        Path archive = tmpFolder.resolve("study.tar.gz");
+        String[] expected = {"1.2.3.4.1", "1.2.3.4.2", "1.2.3.4.3", "1.2.3.4.4", "1.2.3.4.5", "1.2.3.4.6"};
+        TestUtils.writeSampleArchive(archive, UID.ExplicitVRLittleEndian, expected);
+        List<String> iuidList = Collections.synchronizedList(new ArrayList<>());
+        StoreScu storeScu = new StoreScu(scuConnection, new ScuOperationConfig(ScuType.STORE), changeTags, iuidList);
+        storeScu.setOutstandingRequests(4);
+        // Propose asynchronous operations, which the local server accepts without limit
+        scuConnection.getConnection().setMaxOpsInvoked(0);
+        // A slow server keeps the requests outstanding
+        sourceCallback.setDelay(100);
+
+        try {
+            // When
+            try {
+                storeScu.storeFile(archive);
+            } finally {
+                storeScu.close();
+            }
+
+            // Then
+            String[] actual = iuidList.toArray(new String[0]);
+            Arrays.sort(actual);
+            Assertions.assertArrayEquals(expected, actual);
+            Assertions.assertTrue(storeScu.getMaxOutstanding() > 1, "Requests were not pipelined");
+        } catch (ModuleException ex) {
+            Assertions.fail(TestUtils.getStackTrace(ex));
+        } catch (Exception e) {
+            Assertions.fail(e.toString());
+        } finally {
+            scuConnection.getConnection().setMaxOpsInvoked(1);
+            sourceCallback.clear();
+            StoreUtils.deleteFolder(tmpFolder.toString());
+        }
+    }
+
+    @Test
+    void storeScuDeflatedArchive() throws IOException {
+        // Given
+        Path tmpFolder = Files.createTempDirectory("dicom_store_");
+        Path archive = tmpFolder.resolve("study.tar.gz");
+        String[] expected = {"1.2.3.4.1", "1.2.3.4.2"};
+        TestUtils.writeSampleArchive(archive, UID.DeflatedExplicitVRLittleEndian, expected);
+        List<String> iuidList = Collections.synchronizedList(new ArrayList<>());
+        StoreScu storeScu = new StoreScu(scuConnection, new ScuOperationConfig(ScuType.STORE), Collections.emptyMap(), iuidList);
+
+        try {
+            // When
+            try {
+                storeScu.storeFile(archive);
+            } finally {
+                storeScu.close();
+            }
+
+            // Then
+            String[] actual = iuidList.toArray(new String[0]);
+            Arrays.sort(actual);
+            Assertions.assertArrayEquals(expected, actual);
+            String[] received = sourceCallback.getData().toArray(new String[0]);
+            Arrays.sort(received);
+            Assertions.assertArrayEquals(expected, received);
+        } catch (ModuleException ex) {
+            Assertions.fail(TestUtils.getStackTrace(ex));
+        } catch (Exception e) {
+            Assertions.fail(e.toString());
+        } finally {
+            sourceCallback.clear();
+            StoreUtils.deleteFolder(tmpFolder.toString());
+        }
+    }
+
+    @Test
+    void storeScuListParallel() {
+        // Given
+        StoreImage storeImage = TestUtils.setStoreConfig(null);
+        storeImage.setListOfFiles(Arrays.asList(dicomFilenameDcm, dicomFilenameTgz));
+        StoreConcurrency parallel = TestUtils.getStoreConcurrency();
+        parallel.setAssociations(2);
+
+        try {
+            // When
+            List<String> actualList = scuOperations.storeScu(scuConnection, storeImage, false, changeTags, timings, parallel);
+
+            // Then
+            String[] actual = actualList.toArray(new String[0]);
+            Arrays.sort(actual);
+            Assertions.assertArrayEquals(new String[]{
+                    "1.3.6.1.4.1.5962.1.1.110.1.1.1166562673.14401",
+                    "1.3.6.1.4.1.5962.1.1.50.1.1.1166562673.14401",
+                    "1.3.6.1.4.1.5962.1.1.50.1.1.1166562673.14401",
+                    "1.3.6.1.4.1.5962.1.1.70.2.1.5.1166562673.14401"
+            }, actual);
+        } catch (ModuleException ex) {
+            Assertions.fail(TestUtils.getStackTrace(ex));
+        } catch (Exception e) {
+            Assertions.fail(e.toString());
+        } finally {
+            sourceCallback.clear();
+        }
+    }
+
     @Test
     void storeScuContent() {
         // Given
@@ -128,7 +250,7 @@ class LocalServerTest {
 
         try {
             // When
-            List<String> actualList = scuOperations.storeScu(scuConnection, storeImage, false, changeTags, timings);
+            List<String> actualList = scuOperations.storeScu(scuConnection, storeImage, false, changeTags, timings, storeConcurrency);
 
             // Then
             Assertions.assertArrayEquals(new String[]{"1.3.6.1.4.1.5962.1.1.50.1.1.1166562673.14401"}, actualList.toArray(new String[0]));
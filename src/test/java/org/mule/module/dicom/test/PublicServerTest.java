@@ -18,6 +18,7 @@ import org.mule.module.dicom.internal.exception.DicomError;
 import org.mule.module.dicom.internal.operation.ScuOperations;
 import org.mule.module.dicom.internal.util.StoreUtils;
 import org.mule.runtime.extension.api.exception.ModuleException;
+import org.mule.runtime.extension.api.runtime.streaming.PagingProvider;
 
 import java.io.IOException;
 import java.nio.file.Files;
@@ -34,6 +35,7 @@ class PublicServerTest {
     static final String dicomFilenameDcm = TestUtils.getSampleFilename("sample.dcm");
     static final PresentationContext presentationContext = new PresentationContext();
     static final Timings timings = TestUtils.getTimings();
+    static final StoreConcurrency storeConcurrency = TestUtils.getStoreConcurrency();
     static final StoreTimings storeTimings = TestUtils.getStoreTimings();
     static String tempDirectory = null;
 
@@ -144,6 +146,26 @@ class PublicServerTest {
         }
     }
 
+    @Test
+    void findScuStreamNotFound() {
+        // Given
+        TagSearch tagSearch = getTagSearch("FOOBAR");
+        PagingProvider<ScuConnection, Map<String, DicomValue>> stream = scuOperations.findScuStream(tagSearch, presentationContext, timings, 100, 1000);
+
+        try {
+            // When
+            List<Map<String, DicomValue>> page = stream.getPage(scuConnection);
+
+            // Then
+            Assertions.assertTrue(page.isEmpty());
+            stream.close(scuConnection);
+        } catch (ModuleException e) {
+            Assertions.fail(TestUtils.getStackTrace(e));
+        } catch (Exception e) {
+            Assertions.fail(e.toString());
+        }
+    }
+
     @Test
     void storeScu() {
         // Given
@@ -151,7 +173,7 @@ class PublicServerTest {
 
         try {
             // When
-            List<String> actualList = scuOperations.storeScu(scuConnection, storeImage, false, null, timings);
+            List<String> actualList = scuOperations.storeScu(scuConnection, storeImage, false, null, timings, storeConcurrency);
 
             // Then
             Assertions.assertArrayEquals(new String[]{"1.3.6.1.4.1.5962.1.1.50.1.1.1166562673.14401"}, actualList.toArray(new String[]{}));
@@ -22,21 +22,25 @@ import org.mule.runtime.extension.api.runtime.source.SourceCallbackContext;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
 public class TestSourceCallback implements SourceCallback<Object, NullType> {
-    private final List<String> data = new ArrayList<>();
+    private final List<String> data = Collections.synchronizedList(new ArrayList<>());
     public List<String> getData() { return data; }
     private final List<ConnectionException> exceptions = new ArrayList<>();
     public List<ConnectionException> getExceptions() { return exceptions; }
     private String testTag;
     public String getTestTag() { return testTag; }
+    private volatile long delay = 0;
+    public void setDelay(long delay) { this.delay = delay; }
 
     public void clear() {
         data.clear();
         exceptions.clear();
         testTag = null;
+        delay = 0;
     }
 
     @Override
@@ -52,6 +56,14 @@ public class TestSourceCallback implements SourceCallback<Object, NullType> {
         String testTag = image.getString("JohnsHopkinsMedicine", 0x67811000);
         if (testTag != null) this.testTag = testTag;
         data.add(iuid);
+        if (delay > 0) {
+            // Holds the response back, so the requests sent meanwhile stay outstanding
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
     }
 
     @Override
@@ -7,6 +7,15 @@
  */
 package org.mule.module.dicom.test;
 
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.data.UID;
+import org.dcm4che3.data.VR;
+import org.dcm4che3.io.DicomInputStream;
+import org.dcm4che3.io.DicomOutputStream;
+import org.mule.module.dicom.api.parameter.StoreConcurrency;
 import org.mule.module.dicom.api.parameter.StoreImage;
 import org.mule.module.dicom.api.parameter.StoreTimings;
 import org.mule.module.dicom.api.parameter.Timings;
@@ -15,15 +24,19 @@ import org.mule.runtime.core.api.util.FileUtils;
 import org.mule.runtime.extension.api.error.ErrorTypeDefinition;
 import org.mule.runtime.extension.api.exception.ModuleException;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Objects;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
 
 public class TestUtils {
     private static final TestUtils testUtils = new TestUtils();
@@ -42,6 +55,30 @@ public class TestUtils {
     }
     public static String getResourcePath(String resourceName) throws IOException { return testUtils.getResource(resourceName); }
 
+    /**
+     * Writes a gzipped tar archive with a copy of sample.dcm for each SOP Instance UID, encoded in the Transfer Syntax
+     */
+    public static void writeSampleArchive(Path archive, String tsuid, String... iuids) throws IOException {
+        Attributes data;
+        try (DicomInputStream dis = new DicomInputStream(new File(getSampleFilename("sample.dcm")))) {
+            data = dis.readDataset();
+        }
+        try (TarArchiveOutputStream tar = new TarArchiveOutputStream(new GZIPOutputStream(Files.newOutputStream(archive)))) {
+            for (String iuid : iuids) {
+                data.setString(Tag.SOPInstanceUID, VR.UI, iuid);
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try (DicomOutputStream dos = new DicomOutputStream(bytes, UID.ExplicitVRLittleEndian)) {
+                    dos.writeDataset(data.createFileMetaInformation(tsuid), data);
+                }
+                TarArchiveEntry entry = new TarArchiveEntry(iuid + ".dcm");
+                entry.setSize(bytes.size());
+                tar.putArchiveEntry(entry);
+                bytes.writeTo(tar);
+                tar.closeArchiveEntry();
+            }
+        }
+    }
+
     public static Timings getTimings() {
         Timings timings = new Timings();
         timings.setCancelAfter(0);
@@ -54,6 +91,13 @@ public class TestUtils {
         return timings;
     }
 
+    public static StoreConcurrency getStoreConcurrency() {
+        StoreConcurrency storeConcurrency = new StoreConcurrency();
+        storeConcurrency.setOutstandingRequests(1);
+        storeConcurrency.setAssociations(1);
+        return storeConcurrency;
+    }
+
     public static String getStackTrace(ModuleException ex) {
         ErrorTypeDefinition<?> etd = ex.getType();
         StringWriter stringWriter = new StringWriter();